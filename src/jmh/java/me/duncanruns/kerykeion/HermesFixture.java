@@ -0,0 +1,134 @@
+package me.duncanruns.kerykeion;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A synthetic Hermes directory with any number of instances, each with a world log that ends inside a world, a play
+ * log for that world and a state file. Alive files are kept up to date on a daemon thread until the fixture is closed,
+ * so that the instances aren't considered closed.
+ */
+class HermesFixture implements AutoCloseable {
+    private static final long FIRST_TIME = 1763434215136L;
+
+    final Path root;
+    final Path instancesPath;
+    final List<Path> gameDirs = new ArrayList<>();
+    final List<Path> playLogs = new ArrayList<>();
+    private final Thread heartbeat;
+
+    /**
+     * @param instances       The number of instances
+     * @param worldLogEntries The number of entries in each world log
+     * @param playLogLines    The number of lines in each play log
+     */
+    HermesFixture(int instances, int worldLogEntries, int playLogLines) throws IOException {
+        this.root = Files.createTempDirectory("kerykeion-fixture");
+        this.instancesPath = Files.createDirectories(this.root.resolve("instances"));
+        for (int i = 0; i < instances; i++) {
+            Path gameDir = Files.createDirectories(this.root.resolve("games").resolve("instance" + i));
+            Files.createDirectories(gameDir.resolve("hermes"));
+            String lastWorld = writeWorldLog(gameDir.resolve("hermes").resolve("world_log.log"), worldLogEntries);
+            Path playLog = Files.createDirectories(gameDir.resolve(lastWorld).resolve("hermes").resolve("restricted")).resolve("play.log.enc");
+            writePlayLog(playLog, playLogLines);
+            Files.write(gameDir.resolve("hermes").resolve("state.json"), "{\"screen\":\"ingame\",\"inworld\":true}".getBytes(StandardCharsets.UTF_8));
+            writeAlive(gameDir, pid(i));
+            Files.write(this.instancesPath.resolve("instance" + i + ".json"), ("{\"pid\":" + pid(i) + ",\"game_dir\":\"" + gameDir.toString().replace("\\", "\\\\")
+                    + "\",\"game_version\":\"1.16.1\",\"world_log\":{\"relative\":true,\"path\":\"hermes/world_log.log\"},\"is_server\":false,\"mods\":[]}")
+                    .getBytes(StandardCharsets.UTF_8));
+            this.gameDirs.add(gameDir);
+            this.playLogs.add(playLog);
+        }
+        this.heartbeat = new Thread(this::keepAlive, "Kerykeion Fixture Heartbeat");
+        this.heartbeat.setDaemon(true);
+        this.heartbeat.start();
+    }
+
+    private static long pid(int instance) {
+        return 100000 + instance;
+    }
+
+    /**
+     * Writes a world log that enters and leaves worlds, ending with entering a world that is left open.
+     *
+     * @return the game dir relative path of the world that is left open
+     */
+    static String writeWorldLog(Path path, int entries) throws IOException {
+        StringBuilder builder = new StringBuilder();
+        String world = null;
+        for (int i = 0; i < entries; i++) {
+            boolean entering = i % 2 == 0 || i == entries - 1;
+            // The last entry enters a new world if it would otherwise leave one
+            world = "saves/Random Speedrun #" + (i / 2 + (entering && i % 2 == 1 ? 1 : 0));
+            builder.append("{\"world\":{\"relative\":true,\"path\":\"").append(world).append("\"},\"type\":\"")
+                    .append(entering ? "entering" : "leave").append("\",\"time\":").append(FIRST_TIME + i * 50L).append("}\n");
+        }
+        Files.write(path, builder.toString().getBytes(StandardCharsets.UTF_8));
+        return world;
+    }
+
+    static void writePlayLog(Path path, int lines) throws IOException {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < lines; i++) {
+            builder.append(playLogLine(i));
+        }
+        Files.write(path, builder.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    static String playLogLine(int i) {
+        return "{\"type\":\"inventory\",\"tick\":" + i + ",\"data\":\"c29tZSBlbmNyeXB0ZWQgcGF5bG9hZCBieXRlcw==\"}\n";
+    }
+
+    private void keepAlive() {
+        while (true) {
+            try {
+                for (int i = 0; i < this.gameDirs.size(); i++) {
+                    writeAlive(this.gameDirs.get(i), pid(i));
+                }
+                Thread.sleep(500);
+            } catch (InterruptedException | ClosedByInterruptException e) {
+                return;
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+
+    private static void writeAlive(Path gameDir, long pid) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(16);
+        buffer.putLong(pid).putLong(System.currentTimeMillis()).flip();
+        try (FileChannel channel = FileChannel.open(gameDir.resolve("hermes").resolve("alive"), StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            channel.write(buffer, 0);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.heartbeat.interrupt();
+        try {
+            this.heartbeat.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        Files.walkFileTree(this.root, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                Files.delete(file);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
+                Files.delete(dir);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+}
@@ -0,0 +1,63 @@
+package me.duncanruns.kerykeion;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Ticks an {@link InstanceTracker} over a synthetic instances directory, both the first tick that finds every instance
+ * and the steady state ticks after that.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class InstanceTrackerBenchmark {
+    @Param({"1", "32", "256"})
+    public int instances;
+
+    private HermesFixture fixture;
+    private InstanceTracker steadyTracker;
+    private InstanceTracker firstTracker;
+
+    @Setup
+    public void setup() throws IOException {
+        this.fixture = new HermesFixture(this.instances, 2, 0);
+        this.steadyTracker = new InstanceTracker(new FileWatcher(), this.fixture.instancesPath, new KerykeionMetrics());
+        this.steadyTracker.tick();
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        this.steadyTracker.getInstances().forEach(HermesInstance::close);
+        this.fixture.close();
+    }
+
+    @Setup(Level.Invocation)
+    public void newTracker() {
+        this.firstTracker = new InstanceTracker(new FileWatcher(), this.fixture.instancesPath, new KerykeionMetrics());
+    }
+
+    @TearDown(Level.Invocation)
+    public void closeTracker() {
+        this.firstTracker.getInstances().forEach(HermesInstance::close);
+    }
+
+    @Benchmark
+    public InstanceTracker.TickResult firstTick() {
+        return this.firstTracker.tick();
+    }
+
+    @Benchmark
+    public InstanceTracker.TickResult steadyTick() {
+        return this.steadyTracker.tick();
+    }
+
+    @Benchmark
+    public InstanceTracker.TickResult aliveCheck() {
+        return this.steadyTracker.checkAlive();
+    }
+}
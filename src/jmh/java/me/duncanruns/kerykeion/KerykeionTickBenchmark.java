@@ -0,0 +1,89 @@
+package me.duncanruns.kerykeion;
+
+import me.duncanruns.kerykeion.listeners.*;
+import com.google.gson.JsonObject;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs full {@link KerykeionEngine} ticks over a synthetic Hermes directory with a listener of every type, both while
+ * nothing changes and while every instance's play log grows by a line per tick.
+ * <p>
+ * With a parallelism above 1, instances are read on the engine's worker pool and each tick is timed until every
+ * instance has been read, not just until the work has been handed out.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class KerykeionTickBenchmark {
+    @Param({"1", "16", "64"})
+    public int instances;
+
+    @Param({"1", "4"})
+    public int parallelism;
+
+    private HermesFixture fixture;
+    private KerykeionEngine engine;
+    private int line = 0;
+
+    @Setup
+    public void setup(Blackhole blackhole) throws IOException {
+        this.fixture = new HermesFixture(this.instances, 1000, 1000);
+        this.engine = new KerykeionEngine(this.fixture.root);
+        this.engine.setParallelism(this.parallelism);
+        Kerykeion.setErrorLogger((s, t) -> {
+            throw new RuntimeException(s, t);
+        });
+        this.engine.addListener(new HermesInstanceListener() {
+            @Override
+            public void onNewInstance(JsonObject instanceInfo, boolean isNew) {
+                blackhole.consume(instanceInfo);
+            }
+
+            @Override
+            public void onInstanceClosed(JsonObject instanceInfo) {
+                blackhole.consume(instanceInfo);
+            }
+        }, 1, null);
+        this.engine.addListener((HermesStateListener) (instanceInfo, state) -> blackhole.consume(state), 1, null);
+        this.engine.addListener((HermesTypedWorldLogListener) (instanceInfo, entry, isNew) -> blackhole.consume(entry), 1, null);
+        this.engine.addListener((HermesRestrictedPlayLogListener) (instanceInfo, worldPath, lineBytes) -> blackhole.consume(lineBytes), 1, null);
+        // Find the instances and read the existing logs, without starting the engine's own thread
+        this.engine.createWorkerPool();
+        this.tick();
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        this.engine.shutdownWorkerPool();
+        this.fixture.close();
+    }
+
+    private void tick() {
+        this.engine.tick();
+        this.engine.awaitInstanceTicks();
+    }
+
+    @Benchmark
+    public void idleTick() {
+        this.tick();
+    }
+
+    @Benchmark
+    public void playLogTick() throws IOException {
+        byte[] bytes = HermesFixture.playLogLine(this.line++).getBytes(StandardCharsets.UTF_8);
+        for (int i = 0; i < this.fixture.playLogs.size(); i++) {
+            Files.write(this.fixture.playLogs.get(i), bytes, StandardOpenOption.APPEND);
+        }
+        this.tick();
+    }
+}
@@ -0,0 +1,83 @@
+package me.duncanruns.kerykeion;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares reading a whole log from the start with {@link LogReader}, buffered and memory mapped, against the previous
+ * byte-at-a-time implementation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LogReaderBenchmark {
+    @Param({"1", "8"})
+    public int megabytes;
+
+    private Path logPath;
+
+    @Setup
+    public void setup() throws IOException {
+        this.logPath = Files.createTempFile("kerykeion-bench", ".log");
+        StringBuilder builder = new StringBuilder();
+        long bytes = this.megabytes * 1024L * 1024L;
+        for (long time = 1763434215136L; builder.length() < bytes; time += 50) {
+            builder.append("{\"world\":{\"relative\":true,\"path\":\"saves/Random Speedrun #").append(time % 1000)
+                    .append("\"},\"type\":\"entering\",\"time\":").append(time).append("}\n");
+        }
+        Files.write(this.logPath, builder.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(this.logPath);
+    }
+
+    @Benchmark
+    public void logReader(Blackhole blackhole) throws IOException {
+        LogReader reader = new LogReader(this.logPath);
+        reader.read(entryInfo -> blackhole.consume(entryInfo.entry));
+        reader.close();
+    }
+
+    @Benchmark
+    public void logReaderMemoryMapped(Blackhole blackhole) throws IOException {
+        LogReader reader = new LogReader(this.logPath, 1);
+        reader.read(entryInfo -> blackhole.consume(entryInfo.entry));
+        reader.close();
+    }
+
+    @Benchmark
+    public void byteAtATime(Blackhole blackhole) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(this.logPath.toFile(), "r")) {
+            ByteArrayOutputStream lineBuffer = new ByteArrayOutputStream(128);
+            long progress;
+            while ((progress = file.getFilePointer()) < file.length()) {
+                int c;
+                do {
+                    c = file.read();
+                    if (c == -1) break;
+                    lineBuffer.write(c);
+                } while (c != '\n');
+                byte[] line = lineBuffer.toByteArray();
+                lineBuffer.reset();
+                if (line.length == 0 || line[line.length - 1] != '\n') {
+                    file.seek(progress);
+                    break;
+                }
+                blackhole.consume(line);
+            }
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package me.duncanruns.kerykeion;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reads a state file with {@link UpdatingJsonFileReader} when it hasn't been touched, when it is rewritten with the
+ * same contents and when its contents change. The rewriting benchmarks include the cost of writing the file.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class UpdatingJsonFileReaderBenchmark {
+    private static final byte[] TITLE = "{\"screen\":\"title\",\"inworld\":false}".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] INGAME = "{\"screen\":\"ingame\",\"inworld\":true}".getBytes(StandardCharsets.UTF_8);
+
+    private Path statePath;
+    private UpdatingJsonFileReader reader;
+    private boolean toggle = false;
+
+    @Setup
+    public void setup() throws IOException {
+        this.statePath = Files.createTempFile("kerykeion-bench", ".json");
+        Files.write(this.statePath, TITLE);
+        this.reader = new UpdatingJsonFileReader(this.statePath);
+        this.reader.read();
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(this.statePath);
+    }
+
+    @Benchmark
+    public void unchanged(Blackhole blackhole) throws IOException {
+        blackhole.consume(this.reader.read());
+    }
+
+    @Benchmark
+    public void rewrittenSame(Blackhole blackhole) throws IOException {
+        Files.write(this.statePath, TITLE);
+        blackhole.consume(this.reader.read());
+    }
+
+    @Benchmark
+    public void changed(Blackhole blackhole) throws IOException {
+        this.toggle = !this.toggle;
+        Files.write(this.statePath, this.toggle ? INGAME : TITLE);
+        blackhole.consume(this.reader.read());
+    }
+}
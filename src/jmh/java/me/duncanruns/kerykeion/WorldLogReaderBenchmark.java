@@ -0,0 +1,43 @@
+package me.duncanruns.kerykeion;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reads and scans a whole world log from the start with {@link WorldLogReader}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class WorldLogReaderBenchmark {
+    @Param({"10000", "100000"})
+    public int entries;
+
+    private Path logPath;
+
+    @Setup
+    public void setup() throws IOException {
+        this.logPath = Files.createTempFile("kerykeion-bench", ".log");
+        HermesFixture.writeWorldLog(this.logPath, this.entries);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(this.logPath);
+    }
+
+    @Benchmark
+    public void worldLogReader(Blackhole blackhole) throws IOException {
+        WorldLogReader reader = new WorldLogReader(this.logPath);
+        reader.read(entryInfo -> blackhole.consume(entryInfo.entry.getType()));
+        reader.close();
+    }
+}
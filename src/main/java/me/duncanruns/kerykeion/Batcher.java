@@ -0,0 +1,45 @@
+package me.duncanruns.kerykeion;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Collects entries into unmodifiable batches, passing a batch on once it is full or when flushed.
+ */
+class Batcher<T> {
+    private static final int MAX_BATCH_SIZE = 1024;
+
+    private final BatchConsumer<T> consumer;
+    private List<T> batch = new ArrayList<>();
+    private long offset = -1;
+
+    public Batcher(BatchConsumer<T> consumer) {
+        this.consumer = consumer;
+    }
+
+    /**
+     * @param offset the offset of the entry in its log
+     */
+    public void add(T entry, long offset) {
+        if (this.batch.isEmpty()) this.offset = offset;
+        this.batch.add(entry);
+        if (this.batch.size() >= MAX_BATCH_SIZE) {
+            this.flush();
+        }
+    }
+
+    public void flush() {
+        if (this.batch.isEmpty()) return;
+        List<T> full = this.batch;
+        this.batch = new ArrayList<>();
+        this.consumer.accept(Collections.unmodifiableList(full), this.offset);
+    }
+
+    interface BatchConsumer<T> {
+        /**
+         * @param offset the offset of the first entry of the batch in its log
+         */
+        void accept(List<T> batch, long offset);
+    }
+}
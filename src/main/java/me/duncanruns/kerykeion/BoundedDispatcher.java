@@ -0,0 +1,200 @@
+package me.duncanruns.kerykeion;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * An executor for listeners that runs tasks in order on its own daemon thread, with a bounded queue so that a slow
+ * listener can't build up an unbounded backlog. Pass it as the executor to
+ * {@link KerykeionEngine#addListener(me.duncanruns.kerykeion.listeners.KerykeionListener, long, Executor)}; each
+ * listener can have its own dispatcher and policy.
+ * <p>
+ * What happens when the queue is full depends on the {@link Policy}. The counters can be used to see whether a
+ * listener is keeping up.
+ */
+@SuppressWarnings("unused")
+public final class BoundedDispatcher implements KeyedExecutor, AutoCloseable {
+    private static final AtomicInteger threadCount = new AtomicInteger(0);
+
+    private final int capacity;
+    private final Policy policy;
+    private final ArrayDeque<Task> queue;
+    private final Map<Object, Task> queuedByKey = new HashMap<>();
+    private final Thread thread;
+    private boolean closed = false;
+
+    private int maxQueueDepth = 0;
+    private long droppedCount = 0;
+    private long coalescedCount = 0;
+    private long rejectedCount = 0;
+
+    /**
+     * @param capacity The maximum number of tasks waiting to run
+     * @param policy   What to do when the queue is full
+     * @throws IllegalArgumentException if the capacity is less than 1
+     */
+    public BoundedDispatcher(int capacity, Policy policy) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be at least 1!");
+        }
+        this.capacity = capacity;
+        this.policy = policy;
+        this.queue = new ArrayDeque<>(capacity);
+        this.thread = new Thread(this::run, "Kerykeion Dispatcher " + threadCount.incrementAndGet());
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        this.execute(null, task);
+    }
+
+    /**
+     * Queues a task. With {@link Policy#COALESCE}, a task that is still queued with an equal key is replaced by this
+     * one instead of queuing another task.
+     *
+     * @param coalesceKey The key identifying what the task delivers, e.g. the listener and instance for state updates,
+     *                    or null
+     * @throws RejectedExecutionException if the dispatcher is closed, or is closed or interrupted while waiting for
+     *                                    space in the queue
+     */
+    @Override
+    public synchronized void execute(Object coalesceKey, Runnable task) {
+        if (this.closed) this.reject(null);
+        if (coalesceKey != null && this.policy == Policy.COALESCE) {
+            Task queued = this.queuedByKey.get(coalesceKey);
+            if (queued != null) {
+                queued.runnable = task;
+                this.coalescedCount++;
+                return;
+            }
+        }
+        while (this.queue.size() >= this.capacity) {
+            if (this.policy == Policy.DROP_OLDEST) {
+                this.forget(this.queue.poll());
+                this.droppedCount++;
+                continue;
+            }
+            try {
+                this.wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                this.reject(e);
+            }
+            if (this.closed) this.reject(null);
+        }
+        Task queued = new Task(coalesceKey, task);
+        this.queue.add(queued);
+        if (coalesceKey != null && this.policy == Policy.COALESCE) {
+            this.queuedByKey.put(coalesceKey, queued);
+        }
+        this.maxQueueDepth = Math.max(this.maxQueueDepth, this.queue.size());
+        this.notifyAll();
+    }
+
+    private void reject(InterruptedException cause) {
+        this.rejectedCount++;
+        throw new RejectedExecutionException("Dispatcher is closed or was interrupted", cause);
+    }
+
+    private void forget(Task task) {
+        if (task.key != null) {
+            this.queuedByKey.remove(task.key, task);
+        }
+    }
+
+    private void run() {
+        while (true) {
+            Runnable runnable;
+            synchronized (this) {
+                while (this.queue.isEmpty()) {
+                    if (this.closed) return;
+                    try {
+                        this.wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                Task task = this.queue.poll();
+                this.forget(task);
+                runnable = task.runnable;
+                this.notifyAll();
+            }
+            try {
+                runnable.run();
+            } catch (Throwable t) {
+                Kerykeion.errorLogger.accept("Error in dispatched listener", t);
+            }
+        }
+    }
+
+    /**
+     * Stops accepting new tasks. Tasks that are already queued still run.
+     */
+    @Override
+    public synchronized void close() {
+        this.closed = true;
+        this.notifyAll();
+    }
+
+    public synchronized int getQueueDepth() {
+        return this.queue.size();
+    }
+
+    public synchronized int getMaxQueueDepth() {
+        return this.maxQueueDepth;
+    }
+
+    /**
+     * @return the number of tasks dropped by {@link Policy#DROP_OLDEST}
+     */
+    public synchronized long getDroppedCount() {
+        return this.droppedCount;
+    }
+
+    /**
+     * @return the number of tasks replaced by a newer task with the same key under {@link Policy#COALESCE}
+     */
+    public synchronized long getCoalescedCount() {
+        return this.coalescedCount;
+    }
+
+    /**
+     * @return the number of tasks rejected because the dispatcher was closed or the caller was interrupted
+     */
+    public synchronized long getRejectedCount() {
+        return this.rejectedCount;
+    }
+
+    public enum Policy {
+        /**
+         * Blocks Kerykeion's thread until there is space. Nothing is lost, but a slow listener slows down everything.
+         */
+        BLOCK,
+        /**
+         * Drops the oldest queued task to make space.
+         */
+        DROP_OLDEST,
+        /**
+         * Replaces a queued task that has the same key (only state updates have keys, one per listener and
+         * instance), otherwise blocks like {@link Policy#BLOCK}. Each listener only gets the latest state of each
+         * instance, and log entries are never lost.
+         */
+        COALESCE
+    }
+
+    private static class Task {
+        private final Object key;
+        private Runnable runnable;
+
+        private Task(Object key, Runnable runnable) {
+            this.key = key;
+            this.runnable = runnable;
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package me.duncanruns.kerykeion;
+
+/**
+ * When and where the event that is being delivered was read, see {@link EventMetadata#current()}.
+ * <p>
+ * Listener callbacks only receive the event itself, so the metadata is made available to the listener through the
+ * thread that calls it, including when the listener has an executor.
+ */
+@SuppressWarnings("unused")
+public final class EventMetadata {
+    private static final ThreadLocal<EventMetadata> current = new ThreadLocal<>();
+
+    private final long detectedNanos;
+    private final long detectedTime;
+    private final long offset;
+    private final long submitNanos;
+    private final long dispatchNanos;
+
+    private EventMetadata(long detectedNanos, long detectedTime, long offset, long submitNanos, long dispatchNanos) {
+        this.detectedNanos = detectedNanos;
+        this.detectedTime = detectedTime;
+        this.offset = offset;
+        this.submitNanos = submitNanos;
+        this.dispatchNanos = dispatchNanos;
+    }
+
+    /**
+     * @return the metadata of the event being delivered to the calling listener, or null if not called from a listener
+     * callback
+     */
+    public static EventMetadata current() {
+        return current.get();
+    }
+
+    static EventMetadata detected(long offset) {
+        return new EventMetadata(System.nanoTime(), System.currentTimeMillis(), offset, -1, -1);
+    }
+
+    /**
+     * @param submitNanos   when the call was handed to the listener's executor
+     * @param dispatchNanos when the executor started running it
+     */
+    EventMetadata dispatched(long submitNanos, long dispatchNanos) {
+        return new EventMetadata(this.detectedNanos, this.detectedTime, this.offset, submitNanos, dispatchNanos);
+    }
+
+    /**
+     * @return the metadata that was current before
+     */
+    static EventMetadata set(EventMetadata metadata) {
+        EventMetadata previous = current.get();
+        if (metadata == null) current.remove();
+        else current.set(metadata);
+        return previous;
+    }
+
+    /**
+     * @return the {@link System#nanoTime()} at which the event was read
+     */
+    public long getDetectedNanos() {
+        return this.detectedNanos;
+    }
+
+    /**
+     * @return the time in milliseconds since the epoch at which the event was read
+     */
+    public long getDetectedTime() {
+        return this.detectedTime;
+    }
+
+    /**
+     * @return the offset in the log of the first entry or line of the batch being delivered, or -1 for events that
+     * don't come from a log (instances, states and replays)
+     */
+    public long getOffset() {
+        return this.offset;
+    }
+
+    /**
+     * @return the {@link System#nanoTime()} at which the listener's executor started running the call, or -1 if the
+     * listener is called on the thread that read the event
+     */
+    public long getDispatchNanos() {
+        return this.dispatchNanos;
+    }
+
+    /**
+     * @return how long the event waited in the listener's executor in nanoseconds, from being handed to it until it
+     * started running the call, or 0 if it has no executor. Reading and parsing the event before it was handed over is
+     * not included, see {@link EventMetadata#getDetectedNanos()} for that.
+     */
+    public long getQueueNanos() {
+        return this.dispatchNanos == -1 ? 0 : this.dispatchNanos - this.submitNanos;
+    }
+}
@@ -0,0 +1,104 @@
+package me.duncanruns.kerykeion;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.zip.CRC32;
+
+/**
+ * Reads a small file into a reused buffer and tells whether its contents actually changed, so that rewrites with the
+ * same contents don't need to be parsed again.
+ * <p>
+ * The file is only read if its size or modification time changed, or if the last read happened so soon after the
+ * modification time that a later write could have kept the same modification time (filesystems with coarse timestamps
+ * can do this). Contents are compared by size and CRC32.
+ */
+class FileContentReader {
+    private static final int INITIAL_BUFFER_SIZE = 4096;
+
+    private final Path path;
+    private final CRC32 crc = new CRC32();
+    private ByteBuffer buffer = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+    private boolean hasContents = false;
+    private long lastModified = -1;
+    private long lastSize = -1;
+    private long lastHash = 0;
+    private long lastReadTime = 0;
+
+    public FileContentReader(Path path) {
+        this.path = path;
+    }
+
+    /**
+     * Reads the file if it may have changed.
+     *
+     * @return true if the contents are different from the last read, in which case they are available through
+     * {@link FileContentReader#getReader()}
+     * @throws IOException if the file can't be read, including if it doesn't exist
+     */
+    public boolean update() throws IOException {
+        BasicFileAttributes attributes = Files.readAttributes(this.path, BasicFileAttributes.class);
+        long mTime = attributes.lastModifiedTime().toMillis();
+        boolean racy = KerykeionUtil.isModificationRacy(this.lastReadTime, this.lastModified);
+        if (this.hasContents && mTime == this.lastModified && attributes.size() == this.lastSize && !racy) {
+            return false;
+        }
+        this.lastReadTime = System.currentTimeMillis();
+        this.lastModified = mTime;
+        this.readContents(attributes.size());
+        this.crc.reset();
+        this.crc.update(this.buffer.array(), 0, this.buffer.limit());
+        long hash = this.crc.getValue();
+        boolean changed = !this.hasContents || this.buffer.limit() != this.lastSize || hash != this.lastHash;
+        this.hasContents = true;
+        this.lastSize = this.buffer.limit();
+        this.lastHash = hash;
+        return changed;
+    }
+
+    private void readContents(long expectedSize) throws IOException {
+        if (expectedSize >= this.buffer.capacity()) {
+            this.buffer = ByteBuffer.allocate((int) Math.min(Integer.MAX_VALUE - 8, Math.max(expectedSize + 1, this.buffer.capacity() * 2L)));
+        }
+        this.buffer.clear();
+        try (FileChannel channel = FileChannel.open(this.path, StandardOpenOption.READ)) {
+            while (channel.read(this.buffer) > 0) {
+                if (!this.buffer.hasRemaining()) {
+                    // Grew while reading
+                    this.buffer = ByteBuffer.allocate(this.buffer.capacity() * 2).put(this.buffer.array(), 0, this.buffer.position());
+                }
+            }
+        }
+        this.buffer.flip();
+    }
+
+    /**
+     * Makes the next update read the file and report it as changed, e.g. after its contents failed to parse.
+     */
+    public void invalidate() {
+        this.hasContents = false;
+    }
+
+    /**
+     * @return a reader over the contents from the last read, valid until the next update
+     */
+    public Reader getReader() {
+        return new InputStreamReader(new ByteArrayInputStream(this.buffer.array(), 0, this.buffer.limit()), StandardCharsets.UTF_8);
+    }
+
+    public long getLastModified() {
+        return this.lastModified;
+    }
+
+    public Path getPath() {
+        return this.path;
+    }
+}
@@ -0,0 +1,260 @@
+package me.duncanruns.kerykeion;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.file.StandardWatchEventKinds.*;
+
+/**
+ * Tracks which watched files have changed since the last tick using a {@link WatchService}.
+ * <p>
+ * When disabled (the default), or for any directory that could not be registered, files are polled instead. By default
+ * every polled file is reported as changed every tick, but with adaptive polling each polled file has its own
+ * {@link PollSchedule} that backs off while the file doesn't change. Trackers report changes they observe with
+ * {@link FileWatcher#reportChange(Path)}. An overflowed watch key causes everything to be reported as changed for the
+ * next tick.
+ * <p>
+ * Changes are consumed when they are checked, so that instances ticked on worker threads don't lose changes that
+ * arrive while they are busy.
+ */
+class FileWatcher {
+    private WatchService watchService = null;
+    private final Map<Path, WatchedDirectory> directories = new HashMap<>();
+    private final Map<WatchKey, WatchedDirectory> keys = new HashMap<>();
+    private final Set<Path> changedFiles = new HashSet<>();
+    private final Set<Path> changedDirectories = new HashSet<>();
+    private volatile boolean overflowed = false;
+    private final Map<Path, PollSchedule> pollSchedules = new HashMap<>();
+    private long minPollInterval = 0;
+    private long maxPollInterval = 0; // Adaptive polling is disabled unless this is larger than minPollInterval
+
+    /**
+     * Creates the watch service. If it can't be created, the watcher stays in polling mode.
+     *
+     * @return true if the watch service was created, false otherwise
+     */
+    boolean enable() {
+        if (this.watchService != null) return true;
+        try {
+            this.watchService = FileSystems.getDefault().newWatchService();
+            return true;
+        } catch (IOException | UnsupportedOperationException e) {
+            Kerykeion.errorLogger.accept("Failed to create watch service, falling back to polling", e);
+            return false;
+        }
+    }
+
+    boolean isEnabled() {
+        return this.watchService != null;
+    }
+
+    /**
+     * Enables adaptive polling if the maximum interval is larger than the minimum interval.
+     */
+    synchronized void setPollIntervals(long minPollInterval, long maxPollInterval) {
+        this.minPollInterval = minPollInterval;
+        this.maxPollInterval = maxPollInterval;
+    }
+
+    private boolean isAdaptivePolling() {
+        return this.maxPollInterval > this.minPollInterval;
+    }
+
+    /**
+     * Starts watching the parent directory of the given file. The file is considered changed until it is first checked
+     * so that it always gets an initial read.
+     */
+    synchronized void watch(Path file) {
+        this.watchDirectory(file.getParent());
+        this.changedFiles.add(file);
+    }
+
+    /**
+     * Stops watching the parent directory of the given file, once nothing else is watching it.
+     */
+    synchronized void unwatch(Path file) {
+        this.pollSchedules.remove(file);
+        this.unwatchDirectory(file.getParent());
+    }
+
+    /**
+     * Starts watching the given directory. The directory is considered changed until it is first checked.
+     */
+    synchronized void watchDirectory(Path directory) {
+        if (!this.isEnabled() || directory == null) return;
+        WatchedDirectory watched = this.directories.computeIfAbsent(directory, WatchedDirectory::new);
+        watched.references++;
+        this.tryRegister(watched);
+        this.changedDirectories.add(directory);
+    }
+
+    synchronized void unwatchDirectory(Path directory) {
+        if (!this.isEnabled() || directory == null) return;
+        WatchedDirectory watched = this.directories.get(directory);
+        if (watched == null || --watched.references > 0) return;
+        this.directories.remove(directory);
+        if (watched.key != null) {
+            watched.key.cancel();
+            this.keys.remove(watched.key);
+        }
+    }
+
+    /**
+     * Checks and consumes a change to the file.
+     *
+     * @return true if the file may have changed since it was last checked and should be read
+     */
+    synchronized boolean hasChanged(Path file) {
+        return this.changedFiles.remove(file) | this.shouldPoll(file, file.getParent());
+    }
+
+    /**
+     * Checks and consumes a change to the directory.
+     *
+     * @return true if anything in the directory may have changed since it was last checked
+     */
+    synchronized boolean hasDirectoryChanged(Path directory) {
+        return this.changedDirectories.remove(directory) | this.shouldPoll(directory, directory);
+    }
+
+    /**
+     * Resets the poll schedule of a polled file or directory after a tracker saw it change.
+     */
+    synchronized void reportChange(Path path) {
+        PollSchedule schedule = this.pollSchedules.get(path);
+        if (schedule != null) {
+            schedule.reset(System.currentTimeMillis());
+        }
+    }
+
+    /**
+     * @param path      the file or directory being checked
+     * @param directory the directory that would be watched for changes to the path
+     */
+    private boolean shouldPoll(Path path, Path directory) {
+        if (this.overflowed) return true;
+        if (!this.isEnabled()) return this.isPollDue(path);
+        WatchedDirectory watched = this.directories.get(directory);
+        if (watched == null) return this.isPollDue(path);
+        if (watched.key == null) {
+            // Not registered (yet), poll until the directory exists and can be registered
+            this.tryRegister(watched);
+            return this.isPollDue(path);
+        }
+        this.pollSchedules.remove(path); // In case it was polled before the directory could be registered
+        return false;
+    }
+
+    private boolean isPollDue(Path path) {
+        if (!this.isAdaptivePolling()) return true;
+        return this.pollSchedules.computeIfAbsent(path, p -> new PollSchedule())
+                .poll(System.currentTimeMillis(), this.minPollInterval, this.maxPollInterval);
+    }
+
+    private synchronized long getNextPollTime() {
+        long nextPoll = Long.MAX_VALUE;
+        for (PollSchedule schedule : this.pollSchedules.values()) {
+            nextPoll = Math.min(nextPoll, schedule.getNextPoll());
+        }
+        return nextPoll;
+    }
+
+    private void tryRegister(WatchedDirectory watched) {
+        if (watched.key != null || !Files.isDirectory(watched.path)) return;
+        try {
+            watched.key = watched.path.register(this.watchService, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE);
+            this.keys.put(watched.key, watched);
+        } catch (IOException | ClosedWatchServiceException e) {
+            Kerykeion.errorLogger.accept("Failed to watch directory " + watched.path + ", falling back to polling", e);
+        }
+    }
+
+    /**
+     * Blocks until a watched file changes, a polled file is due or the timeout passes. Returns immediately if
+     * everything is going to be polled anyway.
+     */
+    void await(long timeoutMillis) throws InterruptedException {
+        if (this.overflowed) return;
+        if (this.isAdaptivePolling()) {
+            timeoutMillis = Math.min(timeoutMillis, this.getNextPollTime() - System.currentTimeMillis());
+        }
+        if (timeoutMillis <= 0) return;
+        if (!this.isEnabled()) {
+            if (this.isAdaptivePolling()) {
+                Thread.sleep(timeoutMillis);
+            }
+            return;
+        }
+        try {
+            WatchKey key = this.watchService.poll(timeoutMillis, TimeUnit.MILLISECONDS); // Not synchronized, ticks may still be running
+            if (key != null) {
+                this.processKey(key);
+                this.processEvents();
+            }
+        } catch (ClosedWatchServiceException ignored) {
+        }
+    }
+
+    /**
+     * Records the changes that have already been reported, without waiting for any.
+     */
+    void processEvents() {
+        if (!this.isEnabled()) return;
+        try {
+            WatchKey key;
+            while ((key = this.watchService.poll()) != null) {
+                this.processKey(key);
+            }
+        } catch (ClosedWatchServiceException ignored) {
+        }
+    }
+
+    private synchronized void processKey(WatchKey key) {
+        WatchedDirectory watched = this.keys.get(key);
+        if (watched == null) {
+            key.cancel();
+            return;
+        }
+        this.changedDirectories.add(watched.path);
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == OVERFLOW) {
+                this.overflowed = true;
+                continue;
+            }
+            this.changedFiles.add(watched.path.resolve((Path) event.context()));
+        }
+        if (!key.reset()) {
+            // Directory is gone, poll it until it comes back
+            this.keys.remove(key);
+            watched.key = null;
+        }
+    }
+
+    /**
+     * Stops treating everything as changed after an overflow, should be called at the end of every tick.
+     */
+    synchronized void clearOverflow() {
+        this.overflowed = false;
+    }
+
+    void close() {
+        if (this.watchService == null) return;
+        try {
+            this.watchService.close();
+        } catch (IOException e) {
+            Kerykeion.errorLogger.accept("Failed to close watch service", e);
+        }
+    }
+
+    private static class WatchedDirectory {
+        private final Path path;
+        private WatchKey key = null;
+        private int references = 0;
+
+        private WatchedDirectory(Path path) {
+            this.path = path;
+        }
+    }
+}
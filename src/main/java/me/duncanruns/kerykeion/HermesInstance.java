@@ -5,28 +5,48 @@ import com.google.gson.JsonSyntaxException;
 import com.google.gson.annotations.SerializedName;
 
 import java.io.IOException;
-import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.InvalidPathException;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.List;
 
 class HermesInstance {
     private final JsonObject json;
     private final InstanceInfo instanceInfo;
     private final Path infoFilePath;
-
-    final long infoFileLastModified;
+    private final boolean copyInstanceInfo;
+    private final Path gameDir;
+    private final Path alivePath;
 
     boolean closing = false;
-    RandomAccessFile aliveFile = null;
+    private FileChannel aliveChannel = null;
+    private final ByteBuffer aliveBuffer = ByteBuffer.allocate(16);
+    private volatile long lastHeartbeat = -1;
 
-    public HermesInstance(JsonObject json, long mTime, Path infoFilePath) {
+    /**
+     * @param copyInstanceInfo whether to give out a copy of the instance info json instead of sharing it
+     */
+    public HermesInstance(JsonObject json, Path infoFilePath, boolean copyInstanceInfo) {
         this.json = json;
-        this.infoFileLastModified = mTime;
         this.infoFilePath = infoFilePath;
+        this.copyInstanceInfo = copyInstanceInfo;
         this.instanceInfo = tryCreateInstanceInfo(json);
+        this.gameDir = resolveGameDir(this.instanceInfo);
+        this.alivePath = this.gameDir == null ? null : this.gameDir.resolve("hermes").resolve("alive");
+    }
+
+    private static Path resolveGameDir(InstanceInfo instanceInfo) {
+        if (instanceInfo == null || instanceInfo.gameDir == null) return null;
+        try {
+            return Paths.get(instanceInfo.gameDir);
+        } catch (InvalidPathException e) {
+            return null;
+        }
     }
 
     private static InstanceInfo tryCreateInstanceInfo(JsonObject json) {
@@ -39,16 +59,16 @@ class HermesInstance {
         return instanceInfo;
     }
 
+    /**
+     * @return The instance info json, shared between all listeners unless
+     * {@link KerykeionEngine#setCopyInstanceInfo(boolean)} is enabled
+     */
     public JsonObject getInstanceInfoJson() {
-        return this.json.deepCopy();
+        return this.copyInstanceInfo ? this.json.deepCopy() : this.json;
     }
 
     public Path getGameDir() {
-        try {
-            return Paths.get(this.instanceInfo.gameDir);
-        } catch (InvalidPathException e) {
-            return null;
-        }
+        return this.gameDir;
     }
 
     public InstanceInfo getInstanceInfo() {
@@ -80,8 +100,10 @@ class HermesInstance {
             this.closing = true;
         }
         try {
-            if (this.aliveFile != null) {
-                this.aliveFile.close();
+            synchronized (this.aliveBuffer) {
+                if (this.aliveChannel != null) {
+                    this.aliveChannel.close();
+                }
             }
         } catch (IOException e) {
             Kerykeion.errorLogger.accept("Failed to close alive file", e);
@@ -89,29 +111,45 @@ class HermesInstance {
     }
 
     boolean shouldDestroy() {
-        return !this.closing && this.getGameDir() != null && this.instanceInfo.pid != null && !this.isAliveFileValid();
+        return !this.closing && this.alivePath != null && this.instanceInfo.pid != null && !this.isAliveFileValid();
     }
 
+    /**
+     * Reads the pid and heartbeat from the alive file in a single positional read.
+     */
     private boolean isAliveFileValid() {
-        assert this.getGameDir() != null;
+        assert this.alivePath != null;
         assert this.instanceInfo.pid != null;
-        Path alivePath = this.getGameDir().resolve("hermes").resolve("alive");
-        if (!Files.exists(alivePath)) return false;
-        try {
-            if (this.aliveFile == null) {
-                this.aliveFile = new RandomAccessFile(alivePath.toFile(), "r");
-                this.aliveFile.seek(0);
-                long l = this.aliveFile.readLong();
-                if (l != this.instanceInfo.pid) return false;
+        synchronized (this.aliveBuffer) {
+            try {
+                if (this.aliveChannel == null) {
+                    this.aliveChannel = FileChannel.open(this.alivePath, StandardOpenOption.READ);
+                }
+                this.aliveBuffer.clear();
+                while (this.aliveBuffer.hasRemaining()) {
+                    if (this.aliveChannel.read(this.aliveBuffer, this.aliveBuffer.position()) <= 0) return false;
+                }
+                if (this.aliveBuffer.getLong(0) != this.instanceInfo.pid) return false;
+                this.lastHeartbeat = this.aliveBuffer.getLong(8);
+                return Math.abs(System.currentTimeMillis() - this.lastHeartbeat) < 5000;
+            } catch (NoSuchFileException e) {
+                return false;
+            } catch (IOException e) {
+                Kerykeion.errorLogger.accept("Failed to read alive file", e);
+                return false;
             }
-            this.aliveFile.seek(8);
-            return Math.abs(System.currentTimeMillis() - this.aliveFile.readLong()) < 5000;
-        } catch (IOException e) {
-            Kerykeion.errorLogger.accept("Failed to read alive file", e);
-            return false;
         }
     }
 
+    /**
+     * @return how long ago the last heartbeat read from the alive file was written in milliseconds, or -1 if no
+     * heartbeat has been read
+     */
+    public long getHeartbeatAge(long currentTime) {
+        long lastHeartbeat = this.lastHeartbeat;
+        return lastHeartbeat < 0 ? -1 : currentTime - lastHeartbeat;
+    }
+
     public Path getWorldLogPath() {
         return KerykeionUtil.resolveGameDirRelativePath(this.getGameDir(), this.instanceInfo.worldLogRelPath);
     }
@@ -0,0 +1,82 @@
+package me.duncanruns.kerykeion;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A lock-free histogram with power of two buckets: bucket 0 counts zeros, bucket i counts values from 2^(i-1) up to
+ * 2^i - 1. Percentiles are therefore only accurate to within a factor of two.
+ */
+@SuppressWarnings("unused")
+public final class Histogram {
+    private final LongAdder[] buckets = new LongAdder[64];
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    Histogram() {
+        for (int i = 0; i < this.buckets.length; i++) {
+            this.buckets[i] = new LongAdder();
+        }
+    }
+
+    void record(long value) {
+        if (value < 0) value = 0;
+        this.buckets[64 - Long.numberOfLeadingZeros(value)].increment();
+        this.count.increment();
+        this.sum.add(value);
+        this.max.accumulate(value);
+    }
+
+    public long getCount() {
+        return this.count.sum();
+    }
+
+    public long getSum() {
+        return this.sum.sum();
+    }
+
+    public long getMax() {
+        return this.max.get();
+    }
+
+    public double getMean() {
+        long count = this.getCount();
+        return count == 0 ? 0 : (double) this.getSum() / count;
+    }
+
+    /**
+     * @param percentile The percentile, from 0 to 100
+     * @return the upper bound of the bucket that contains the percentile, or 0 if nothing has been recorded
+     */
+    public long getPercentile(double percentile) {
+        long count = this.getCount();
+        if (count == 0) return 0;
+        long target = (long) Math.ceil(count * Math.min(100, Math.max(0, percentile)) / 100);
+        long seen = 0;
+        for (int i = 0; i < this.buckets.length; i++) {
+            seen += this.buckets[i].sum();
+            if (seen >= Math.max(1, target)) {
+                return Math.min(i == 0 ? 0 : (1L << i) - 1, this.getMax());
+            }
+        }
+        return this.getMax();
+    }
+
+    /**
+     * @return the count of each bucket, see {@link Histogram}
+     */
+    public long[] getBucketCounts() {
+        long[] counts = new long[this.buckets.length];
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = this.buckets[i].sum();
+        }
+        return counts;
+    }
+
+    @Override
+    public String toString() {
+        return "count=" + this.getCount() + " mean=" + String.format("%.1f", this.getMean()) + " p50=" + this.getPercentile(50)
+                + " p99=" + this.getPercentile(99) + " max=" + this.getMax();
+    }
+}
@@ -1,64 +1,140 @@
 package me.duncanruns.kerykeion;
 
 import com.google.gson.JsonObject;
+import com.google.gson.JsonSyntaxException;
 
 import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.Path;
+import java.nio.file.*;
 import java.util.*;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
 
 import static me.duncanruns.kerykeion.Kerykeion.GSON;
 import static me.duncanruns.kerykeion.Kerykeion.errorLogger;
 
 class InstanceTracker {
-    private static final Path HERMES_GLOBAL_INSTANCES_PATH = Kerykeion.getHermesGlobalPath().resolve("instances");
     private final Map<String, HermesInstance> instanceMap = new HashMap<>();
+    private final Map<String, FileContentReader> infoFileReaders = new HashMap<>();
+    private final Set<String> staleInfoFiles = new HashSet<>();
+    private final FileWatcher fileWatcher;
+    private final Path instancesPath;
+    private final KerykeionMetrics metrics;
+    private boolean copyInstanceInfo = false;
     private boolean firstTick = true;
+    private long lastListingModified = -1;
+    private long lastListingTime = 0;
+
+    public InstanceTracker(FileWatcher fileWatcher, Path instancesPath, KerykeionMetrics metrics) {
+        this.fileWatcher = fileWatcher;
+        this.instancesPath = instancesPath;
+        this.metrics = metrics;
+    }
+
+    public void setCopyInstanceInfo(boolean copyInstanceInfo) {
+        this.copyInstanceInfo = copyInstanceInfo;
+    }
 
     public TickResult tick() {
         TickResult result = new TickResult();
+        if (this.firstTick) {
+            this.fileWatcher.watchDirectory(this.instancesPath);
+        }
         this.checkInstancesFolder(result);
         this.firstTick = false;
         return result;
     }
 
     private void checkInstancesFolder(TickResult result) {
-        if (Files.notExists(HERMES_GLOBAL_INSTANCES_PATH)) return;
-        try (Stream<Path> list = Files.list(HERMES_GLOBAL_INSTANCES_PATH)) {
-            List<Path> infoFiles = list
-                    .filter(Files::isRegularFile)
-                    .filter(path -> path.getFileName().toString().endsWith(".json"))
-                    .collect(Collectors.toList());
-            List<String> infoFileNames = infoFiles.stream().map(p -> p.getFileName().toString()).collect(Collectors.toList());
-            for (Map.Entry<String, HermesInstance> e : new HashSet<>(this.instanceMap.entrySet())) {
-                if (!infoFileNames.contains(e.getKey())) {
-                    e.getValue().destroy();
-                    this.instanceMap.remove(e.getKey());
-                    result.closedInstances.add(e.getValue().getInstanceInfoJson());
+        if (!this.fileWatcher.hasDirectoryChanged(this.instancesPath)) {
+            this.checkAliveFiles(result);
+            return;
+        }
+        long mTime;
+        try {
+            mTime = Files.getLastModifiedTime(this.instancesPath).toMillis();
+        } catch (NoSuchFileException e) {
+            return;
+        } catch (IOException e) {
+            errorLogger.accept("Failed to check instances folder", e);
+            return;
+        }
+        // Files are only added, removed or renamed when the directory's modification time changes, unless the change
+        // happened so soon after the last listing that the modification time couldn't show it
+        boolean racy = KerykeionUtil.isModificationRacy(this.lastListingTime, this.lastListingModified);
+        if (mTime == this.lastListingModified && !racy) {
+            for (FileContentReader reader : this.infoFileReaders.values()) {
+                if (!this.staleInfoFiles.contains(reader.getPath().getFileName().toString())) {
+                    this.checkoutInstanceInfoFile(reader.getPath(), result);
+                }
+            }
+        } else {
+            this.lastListingTime = System.currentTimeMillis();
+            this.lastListingModified = mTime;
+            this.listInstancesFolder(result);
+        }
+        if (!result.isEmpty()) {
+            this.fileWatcher.reportChange(this.instancesPath);
+        }
+    }
+
+    private void listInstancesFolder(TickResult result) {
+        List<Path> infoFiles = new ArrayList<>();
+        Set<String> infoFileNames = new HashSet<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(this.instancesPath, "*.json")) {
+            for (Path path : stream) {
+                String name = path.getFileName().toString();
+                // Known files were already checked to be regular files
+                if (this.infoFileReaders.containsKey(name) || Files.isRegularFile(path)) {
+                    infoFiles.add(path);
+                    infoFileNames.add(name);
                 }
             }
-            infoFiles.forEach(path -> this.checkoutInstanceInfoFile(path, result));
-        } catch (Exception e) {
+        } catch (IOException | DirectoryIteratorException e) {
             errorLogger.accept("Failed to list instances folder", e);
+            return;
         }
+        this.instanceMap.entrySet().removeIf(e -> {
+            if (infoFileNames.contains(e.getKey())) return false;
+            e.getValue().destroy();
+            result.closedInstances.add(e.getValue().getInstanceInfoJson());
+            return true;
+        });
+        this.infoFileReaders.keySet().retainAll(infoFileNames);
+        this.staleInfoFiles.retainAll(infoFileNames);
+        infoFiles.forEach(path -> this.checkoutInstanceInfoFile(path, result));
+    }
+
+    /**
+     * Only checks the alive files of known instances, without looking for new instances.
+     */
+    public TickResult checkAlive() {
+        TickResult result = new TickResult();
+        this.checkAliveFiles(result);
+        return result;
+    }
+
+    private void checkAliveFiles(TickResult result) {
+        this.instanceMap.values().removeIf(i -> {
+            if (!i.shouldDestroy()) return false;
+            i.destroy();
+            result.closedInstances.add(i.getInstanceInfoJson());
+            return true;
+        });
     }
 
     private void checkoutInstanceInfoFile(Path path, TickResult result) {
         String instanceInfoFileName = path.getFileName().toString();
-        long mTime;
+        FileContentReader reader = this.infoFileReaders.computeIfAbsent(instanceInfoFileName, n -> new FileContentReader(path));
+        boolean changed;
         try {
-            mTime = Files.getLastModifiedTime(path).toMillis();
+            changed = reader.update();
         } catch (IOException e) {
-            errorLogger.accept("Failed to get last modified time of instance info file", e);
+            errorLogger.accept("Failed to read instance info file", e);
             return;
         }
         Optional<HermesInstance> existingInstance = Optional.ofNullable(this.instanceMap.get(instanceInfoFileName));
-        long lastMTime = existingInstance.map(i -> i.infoFileLastModified).orElse(-1L);
 
-        if (mTime == lastMTime) {
-            if (existingInstance.isPresent() && existingInstance.get().shouldDestroy()) {
+        if (!changed && this.staleInfoFiles.contains(instanceInfoFileName)) return;
+        if (!changed && existingInstance.isPresent()) {
+            if (existingInstance.get().shouldDestroy()) {
                 existingInstance.get().destroy();
                 this.instanceMap.remove(instanceInfoFileName);
                 result.closedInstances.add(existingInstance.get().getInstanceInfoJson());
@@ -72,17 +148,25 @@ class InstanceTracker {
         });
         JsonObject json;
         try {
-            String contents = new String(Files.readAllBytes(path));
-            json = GSON.fromJson(contents, JsonObject.class);
-        } catch (IOException e) {
-            errorLogger.accept("Failed to read instance info file", e);
+            json = GSON.fromJson(reader.getReader(), JsonObject.class);
+        } catch (JsonSyntaxException e) {
+            reader.invalidate();
+            this.metrics.instanceInfoParseFailures.increment();
+            errorLogger.accept("Failed to parse instance info file", e);
+            return;
+        }
+        if (json == null) {
+            reader.invalidate();
             return;
         }
-        HermesInstance i = new HermesInstance(json, mTime, path);
+        HermesInstance i = new HermesInstance(json, path, this.copyInstanceInfo);
         if (i.shouldDestroy()) {
             i.destroy();
+            // Remembered in case it couldn't be deleted, so that it isn't parsed again until it changes
+            this.staleInfoFiles.add(instanceInfoFileName);
             return;
         }
+        this.staleInfoFiles.remove(instanceInfoFileName);
         this.instanceMap.put(instanceInfoFileName, i);
         if (this.firstTick) {
             result.existingInstances.add(i.getInstanceInfoJson());
@@ -105,5 +189,9 @@ class InstanceTracker {
             this.newInstances = new ArrayList<>();
             this.closedInstances = new ArrayList<>();
         }
+
+        boolean isEmpty() {
+            return this.existingInstances.isEmpty() && this.newInstances.isEmpty() && this.closedInstances.isEmpty();
+        }
     }
 }
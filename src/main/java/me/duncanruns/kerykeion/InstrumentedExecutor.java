@@ -0,0 +1,55 @@
+package me.duncanruns.kerykeion;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Wraps a listener's executor to record how long each task waits in it and how long it takes to run, and to count
+ * rejected tasks. Keys are passed on if the wrapped executor is a {@link KeyedExecutor}. The {@link EventMetadata} of
+ * the event being delivered is carried over to the thread that runs the task.
+ */
+class InstrumentedExecutor implements KeyedExecutor {
+    private final Executor delegate;
+    private final KerykeionMetrics metrics;
+
+    InstrumentedExecutor(Executor delegate, KerykeionMetrics metrics) {
+        this.delegate = delegate;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        this.execute(null, task);
+    }
+
+    @Override
+    public void execute(Object key, Runnable task) {
+        Runnable measured = this.measured(task);
+        try {
+            if (this.delegate instanceof KeyedExecutor) {
+                ((KeyedExecutor) this.delegate).execute(key, measured);
+            } else {
+                this.delegate.execute(measured);
+            }
+        } catch (RejectedExecutionException e) {
+            this.metrics.rejectedExecutions.increment();
+            throw e;
+        }
+    }
+
+    private Runnable measured(Runnable runnable) {
+        long submitted = System.nanoTime();
+        EventMetadata metadata = EventMetadata.current();
+        return () -> {
+            long start = System.nanoTime();
+            this.metrics.listenerQueueTime.record((start - submitted) / 1000);
+            EventMetadata previous = EventMetadata.set(metadata == null ? null : metadata.dispatched(submitted, start));
+            try {
+                runnable.run();
+            } finally {
+                EventMetadata.set(previous);
+                this.metrics.listenerRunTime.record((System.nanoTime() - start) / 1000);
+            }
+        };
+    }
+}
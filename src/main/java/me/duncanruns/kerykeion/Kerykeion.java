@@ -1,13 +1,15 @@
 package me.duncanruns.kerykeion;
 
 import com.google.gson.Gson;
-import me.duncanruns.kerykeion.listeners.*;
+import me.duncanruns.kerykeion.listeners.KerykeionListener;
 
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.*;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
 import java.util.concurrent.Executor;
-import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.BiConsumer;
 import java.util.function.Supplier;
 
@@ -15,193 +17,188 @@ import java.util.function.Supplier;
 public final class Kerykeion {
     public static final Gson GSON = new Gson();
 
-    private static final List<HermesInstanceListener> instanceListeners = new ArrayList<>();
-    private static final List<HermesStateListener> stateListeners = new ArrayList<>();
-    private static final List<HermesWorldLogListener> worldLogListeners = new ArrayList<>();
-    private static final List<HermesRestrictedPlayLogListener> livePlayLogListeners = new ArrayList<>();
-    private static long tickInterval = Long.MAX_VALUE;
-
     static BiConsumer<String, Throwable> errorLogger = (s, throwable) -> System.err.println(s + "\n" + throwable);
 
+    private static final KerykeionEngine defaultEngine = new KerykeionEngine();
 
-    private static boolean started = false; // has been started at any point in the past even if it was stopped
-    private static volatile boolean stopped = false;
-    private static final AtomicBoolean shouldRun = new AtomicBoolean(true);
+    private Kerykeion() {
+    }
 
-    private static final InstanceTracker instanceTracker = new InstanceTracker();
-    private static final WorldLogTracker worldLogTracker = new WorldLogTracker();
-    private static final StateTracker stateTracker = new StateTracker();
-    private static final LivePlayLogTracker livePlayLogTracker = new LivePlayLogTracker();
-    private static long lastInstanceCheck = 0;
+    /**
+     * @return the engine that the static methods of this class delegate to, which reads the global Hermes directory
+     */
+    public static KerykeionEngine getDefaultEngine() {
+        return defaultEngine;
+    }
 
-    private Kerykeion() {
+    /**
+     * Adds a listener to the default engine, see
+     * {@link KerykeionEngine#addListener(KerykeionListener, long, Executor)}.
+     */
+    public static void addListener(KerykeionListener listener, long requiredTickInterval, Executor executor) {
+        defaultEngine.addListener(listener, requiredTickInterval, executor);
     }
 
     /**
-     * Adds a listener to Kerykeion. Listeners cannot be added after Kerykeion has been started.
-     * <p>
-     * The tick interval that Kerykeion will use is the minimum of all required tick intervals, so in an environment
-     * such as a Jingle plugin, Kerykeion's tick interval may be lower than expected due to another plugin, so be
-     * careful not to rely on the tick interval being what you expect.
-     * <p>
-     * Instance listening will only be run at minimum every 1000ms, regardless of the used tick interval.
-     * <p>
-     * It is highly recommended to offload to an executor to avoid blocking Kerykeion's thread.
-     *
-     * @param listener             The listener to add
-     * @param requiredTickInterval The tick interval required by this listener in milliseconds
-     * @param executor             The executor to use for this listener, can be null to listen on Kerykeion's thread
-     * @throws IllegalStateException    if Kerykeion has already been started
-     * @throws IllegalArgumentException if the listener is not one of the more specific interfaces
-     */
-    public static synchronized void addListener(KerykeionListener listener, long requiredTickInterval, Executor executor) {
-        if (started) {
-            throw new IllegalStateException("Kerykeion already started, listeners need to be registered earlier!");
-        }
-        boolean matched = false;
-        if (listener instanceof HermesInstanceListener) {
-            instanceListeners.add(HermesInstanceListener.wrap((HermesInstanceListener) listener, executor));
-            matched = true;
-        }
-        if (listener instanceof HermesStateListener) {
-            stateListeners.add(HermesStateListener.wrap((HermesStateListener) listener, executor));
-            matched = true;
-        }
-        if (listener instanceof HermesWorldLogListener) {
-            worldLogListeners.add(HermesWorldLogListener.wrap((HermesWorldLogListener) listener, executor));
-            matched = true;
-        }
-        if (listener instanceof HermesRestrictedPlayLogListener) {
-            livePlayLogListeners.add(HermesRestrictedPlayLogListener.wrap((HermesRestrictedPlayLogListener) listener, executor));
-            if (!worldLogListeners.contains(livePlayLogTracker)) {
-                worldLogListeners.add(livePlayLogTracker);
-            }
-            matched = true;
-        }
-        if (!matched) {
-            throw new IllegalArgumentException("Unknown listener type! Please implement one of the more specific interfaces.");
-        }
-        requireTickInterval(requiredTickInterval);
+     * Adds a listener to the default engine, see
+     * {@link KerykeionEngine#addListener(KerykeionListener, long, Executor, boolean)}.
+     */
+    public static void addListener(KerykeionListener listener, long requiredTickInterval, Executor executor, boolean replay) {
+        defaultEngine.addListener(listener, requiredTickInterval, executor, replay);
+    }
+
+    /**
+     * Removes a listener from the default engine, see {@link KerykeionEngine#removeListener(KerykeionListener)}.
+     */
+    public static boolean removeListener(KerykeionListener listener) {
+        return defaultEngine.removeListener(listener);
     }
 
-    private static void requireTickInterval(long requiredTickInterval) {
-        tickInterval = Math.min(Math.max(requiredTickInterval, 1), tickInterval);
+    /**
+     * See {@link KerykeionEngine#setUseWatchService(boolean)}.
+     */
+    public static void setUseWatchService(boolean useWatchService) {
+        defaultEngine.setUseWatchService(useWatchService);
+    }
+
+    /**
+     * See {@link KerykeionEngine#setMaxPollInterval(long)}.
+     */
+    public static void setMaxPollInterval(long maxPollInterval) {
+        defaultEngine.setMaxPollInterval(maxPollInterval);
+    }
+
+    /**
+     * See {@link KerykeionEngine#setMemoryMapThreshold(long)}.
+     */
+    public static void setMemoryMapThreshold(long memoryMapThreshold) {
+        defaultEngine.setMemoryMapThreshold(memoryMapThreshold);
+    }
+
+    /**
+     * See {@link KerykeionEngine#setBackgroundReplayThreshold(long)}.
+     */
+    public static void setBackgroundReplayThreshold(long backgroundReplayThreshold) {
+        defaultEngine.setBackgroundReplayThreshold(backgroundReplayThreshold);
+    }
+
+    /**
+     * See {@link KerykeionEngine#setOffsetStorePath(Path)}.
+     */
+    public static void setOffsetStorePath(Path offsetStorePath) {
+        defaultEngine.setOffsetStorePath(offsetStorePath);
+    }
+
+    /**
+     * See {@link KerykeionEngine#setCopyInstanceInfo(boolean)}.
+     */
+    public static void setCopyInstanceInfo(boolean copyInstanceInfo) {
+        defaultEngine.setCopyInstanceInfo(copyInstanceInfo);
     }
 
     /**
-     * Starts Kerykeion. Listeners need to be added before this is called. The first tick will happen after the tick interval.
+     * See {@link KerykeionEngine#setAliveCheckInterval(long)}.
+     */
+    public static void setAliveCheckInterval(long aliveCheckInterval) {
+        defaultEngine.setAliveCheckInterval(aliveCheckInterval);
+    }
+
+    /**
+     * See {@link KerykeionEngine#setParallelism(int)}.
+     */
+    public static void setParallelism(int parallelism) {
+        defaultEngine.setParallelism(parallelism);
+    }
+
+    /**
+     * See {@link KerykeionEngine#setVirtualThreadListeners(boolean)}.
+     */
+    public static void setVirtualThreadListeners(boolean virtualThreadListeners) {
+        defaultEngine.setVirtualThreadListeners(virtualThreadListeners);
+    }
+
+    /**
+     * See {@link KerykeionEngine#setSnapshotsEnabled(boolean)}.
+     */
+    public static void setSnapshotsEnabled(boolean snapshotsEnabled) {
+        defaultEngine.setSnapshotsEnabled(snapshotsEnabled);
+    }
+
+    /**
+     * See {@link KerykeionEngine#setWorldLogIndexEnabled(boolean)}.
+     */
+    public static void setWorldLogIndexEnabled(boolean worldLogIndexEnabled) {
+        defaultEngine.setWorldLogIndexEnabled(worldLogIndexEnabled);
+    }
+
+    /**
+     * Starts the default engine. At least one listener needs to be added before this is called, unless snapshots or the
+     * world log index are enabled. More can be added and removed afterwards. The first tick will happen after the tick
+     * interval.
      */
     public static void start() {
-        start(false);
+        defaultEngine.start();
     }
 
     /**
-     * Starts Kerykeion. Listeners need to be added before this is called. The first tick will happen after the tick interval.
+     * Starts the default engine. At least one listener needs to be added before this is called, unless snapshots or the
+     * world log index are enabled. More can be added and removed afterwards. The first tick will happen after the tick
+     * interval.
      *
      * @param tickOnce If true, Kerykeion will tick once on the calling thread before starting the scheduled ticks.
      */
-    public static synchronized void start(boolean tickOnce) {
-        if (started) return;
-
-        if (instanceListeners.isEmpty() && stateListeners.isEmpty() && worldLogListeners.isEmpty() && livePlayLogListeners.isEmpty()) {
-            throw new IllegalStateException("No listeners added! Add at least one listener before starting!");
-        }
-
-        if (tickOnce) {
-            tick();
-        }
-        new Thread(Kerykeion::mainLoop, "Kerykeion").start();
-        started = true;
-    }
-
-    @SuppressWarnings("BusyWait")
-    private static void mainLoop() {
-        try {
-            while (shouldRun.get()) {
-                tick();
-                try {
-                    Thread.sleep(tickInterval);
-                } catch (InterruptedException e) {
-                    throw new RuntimeException(e);
-                }
-            }
-        } catch (Throwable t) {
-            errorLogger.accept("Kerykeion encountered an error and will stop!", t);
-            throw t;
-        } finally {
-            stopped = true;
-            shouldRun.set(false);
-        }
+    public static void start(boolean tickOnce) {
+        defaultEngine.start(tickOnce);
     }
 
-    private static synchronized void tick() {
-        long l = System.currentTimeMillis();
-        if (Math.abs(l - lastInstanceCheck) > 950) {
-            lastInstanceCheck = l;
-            tickInstance();
-        }
-        if (!worldLogListeners.isEmpty()) {
-            tickWorldLog();
-        }
-        if (!stateListeners.isEmpty()) {
-            tickState();
-        }
-        if (!livePlayLogListeners.isEmpty()) {
-            tickLivePlayLog();
-        }
+    public static boolean stop() {
+        return defaultEngine.stop();
     }
 
-    private static void tickLivePlayLog() {
-        livePlayLogTracker.tick(entryInfo -> livePlayLogListeners.forEach(lis -> lis.onLivePlayLogEntry(entryInfo.instanceInfo, entryInfo.worldPath, entryInfo.line.clone())));
+    /**
+     * @return the default engine's metrics, which can be read at any time from any thread
+     */
+    public static KerykeionMetrics getMetrics() {
+        return defaultEngine.getMetrics();
     }
 
-    private static void tickState() {
-        StateTracker.TickResult result = stateTracker.tick(instanceTracker.getInstances());
-        result.entries.forEach(e -> stateListeners.forEach(lis -> lis.onInstanceStateChange(e.instance.getInstanceInfoJson(), e.entry)));
+    /**
+     * Registers the default engine's metrics with the platform MBean server as
+     * {@code me.duncanruns.kerykeion:type=Kerykeion}.
+     *
+     * @return true if the MBean was registered or already was, false if it failed
+     */
+    public static boolean registerMBean() {
+        return defaultEngine.registerMBean();
     }
 
-    private static void tickInstance() {
-        InstanceTracker.TickResult result = instanceTracker.tick();
-        instanceListeners.forEach(lis -> {
-            result.existingInstances.forEach(i -> lis.onNewInstance(i, false));
-            result.newInstances.forEach(i -> lis.onNewInstance(i, true));
-            result.closedInstances.forEach(lis::onInstanceClosed);
-        });
+    /**
+     * See {@link KerykeionEngine#getSnapshot()}.
+     */
+    public static KerykeionSnapshot getSnapshot() {
+        return defaultEngine.getSnapshot();
     }
 
-    private static void tickWorldLog() {
-        worldLogTracker.tick(
-                instanceTracker.getInstances(),
-                entryInfo -> worldLogListeners.forEach(
-                        lis -> lis.onWorldLogEntry(
-                                entryInfo.instance.getInstanceInfoJson(),
-                                entryInfo.entry,
-                                entryInfo.isNew
-                        )
-                )
-        );
+    /**
+     * See {@link KerykeionEngine#getWorldLogIndex(Path)}.
+     */
+    public static WorldLogIndex getWorldLogIndex(Path gameDir) {
+        return defaultEngine.getWorldLogIndex(gameDir);
     }
 
-    public static synchronized boolean stop() {
-        if (!started) return false;
-        shouldRun.set(false);
-        int tries;
-        for (tries = 0; tries < 100 && !stopped; tries++) {
-            try {
-                Thread.sleep(10);
-            } catch (InterruptedException e) {
-                throw new RuntimeException(e);
-            }
-        }
-        return tries < 100;
+    /**
+     * See {@link KerykeionEngine#getHeartbeatAges()}.
+     */
+    public static Map<Path, Long> getHeartbeatAges() {
+        return defaultEngine.getHeartbeatAges();
     }
 
     public static boolean hasStarted() {
-        return started;
+        return defaultEngine.hasStarted();
     }
 
     public static boolean hasStopped() {
-        return stopped;
+        return defaultEngine.hasStopped();
     }
 
     /**
@@ -0,0 +1,1008 @@
+package me.duncanruns.kerykeion;
+
+import com.google.gson.JsonObject;
+import me.duncanruns.kerykeion.listeners.*;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * A single Kerykeion engine, with its own listeners, settings, tick thread, read offsets and metrics. Engines are fully
+ * independent of each other, so several can run in the same JVM, e.g. for different Hermes directories or for plugins
+ * that don't want to share a tick interval. {@link Kerykeion} delegates to a default engine.
+ */
+@SuppressWarnings("unused")
+public final class KerykeionEngine {
+    private static final long INSTANCE_CHECK_INTERVAL = 950;
+    private static final long IDLE_TICK_INTERVAL = 1000; // Used while no listeners are registered after starting
+
+    // Copy on write so that listeners can be added and removed while ticking, without allocating when dispatching
+    private final List<HermesInstanceListener> instanceListeners = new CopyOnWriteArrayList<>();
+    private final List<HermesStateListener> stateListeners = new CopyOnWriteArrayList<>();
+    private final List<HermesStateDiffListener> stateDiffListeners = new CopyOnWriteArrayList<>();
+    private final List<HermesWorldLogBatchListener> worldLogListeners = new CopyOnWriteArrayList<>();
+    private final List<HermesRestrictedPlayLogBatchListener> livePlayLogListeners = new CopyOnWriteArrayList<>();
+    private final List<HermesRestrictedPlayLogBufferListener> livePlayLogBufferListeners = new CopyOnWriteArrayList<>();
+    private final List<HermesRestrictedPlayLogCaughtUpListener> livePlayLogCaughtUpListeners = new CopyOnWriteArrayList<>();
+    private final List<Registration> registrations = new ArrayList<>(); // Guarded by itself
+    private final Queue<Registration> pendingRegistrations = new ConcurrentLinkedQueue<>(); // Added after starting, applied on the next tick
+    private final Map<HermesInstance, List<Registration>> pendingReplays = new ConcurrentHashMap<>();
+    private final Object tickIntervalLock = new Object();
+    private volatile long tickInterval = Long.MAX_VALUE;
+    private boolean useWatchService = false;
+    private long maxPollInterval = 0;
+
+    private volatile boolean started = false; // has been started at any point in the past even if it was stopped
+    private volatile boolean stopped = false;
+    private final AtomicBoolean shouldRun = new AtomicBoolean(true);
+
+    private final Path hermesPath;
+    private final KerykeionMetrics metrics = new KerykeionMetrics();
+    private final FileWatcher fileWatcher = new FileWatcher();
+    private final OffsetStore offsetStore = new OffsetStore();
+    private final InstanceTracker instanceTracker;
+    private final WorldLogTracker worldLogTracker;
+    private final StateTracker stateTracker;
+    private final LivePlayLogTracker livePlayLogTracker;
+    private final Map<HermesInstance, AtomicBoolean> instancesTicking = new HashMap<>();
+    private final Phaser instanceTicks = new Phaser(1); // Each instance on the worker pool is a party until it is read
+    private int parallelism = 1;
+    private ExecutorService workerPool = null;
+    private final AtomicReference<Throwable> workerFailure = new AtomicReference<>();
+    private long lastInstanceCheck = 0;
+    private long aliveCheckInterval = INSTANCE_CHECK_INTERVAL;
+    private long lastAliveCheck = 0;
+    private boolean snapshotsEnabled = false;
+    private boolean worldLogIndexEnabled = false;
+    private volatile boolean virtualThreadListeners = false;
+    private final Map<HermesInstance, KerykeionSnapshot.InstanceSnapshot> instanceSnapshots = new ConcurrentHashMap<>();
+    private final AtomicBoolean snapshotChanged = new AtomicBoolean(false);
+    private volatile KerykeionSnapshot snapshot = KerykeionSnapshot.EMPTY;
+
+    /**
+     * Creates an engine for the global Hermes directory, see {@link Kerykeion#getHermesGlobalPath()}.
+     */
+    public KerykeionEngine() {
+        this(Kerykeion.getHermesGlobalPath());
+    }
+
+    /**
+     * @param hermesPath The Hermes directory to read, which contains the instances directory
+     */
+    public KerykeionEngine(Path hermesPath) {
+        this.hermesPath = hermesPath;
+        this.instanceTracker = new InstanceTracker(this.fileWatcher, hermesPath.resolve("instances"), this.metrics);
+        this.worldLogTracker = new WorldLogTracker(this.fileWatcher, this.offsetStore, this.metrics);
+        this.stateTracker = new StateTracker(this.fileWatcher, this.metrics);
+        this.livePlayLogTracker = new LivePlayLogTracker(this.fileWatcher, this.offsetStore, this.metrics);
+    }
+
+    /**
+     * Adds a listener to this engine, with a replay of the current state if the engine has already started, see
+     * {@link KerykeionEngine#addListener(KerykeionListener, long, Executor, boolean)}.
+     */
+    public void addListener(KerykeionListener listener, long requiredTickInterval, Executor executor) {
+        this.addListener(listener, requiredTickInterval, executor, true);
+    }
+
+    /**
+     * Adds a listener to this engine. Listeners can be added and removed at any time, including from other listeners.
+     * A listener added after the engine has started takes effect on the next tick.
+     * <p>
+     * The tick interval that the engine will use is the minimum of all required tick intervals, so when an engine is
+     * shared, e.g. the default engine in an environment such as a Jingle plugin, the tick interval may be lower than
+     * expected due to another plugin, so be careful not to rely on the tick interval being what you expect. It is
+     * recomputed whenever listeners are added or removed.
+     * <p>
+     * Instance listening will only be run at minimum every 1000ms, regardless of the used tick interval.
+     * <p>
+     * It is highly recommended to offload to an executor to avoid blocking the engine's thread.
+     * A {@link BoundedDispatcher} can be used as the executor to bound how far behind a slow listener can get.
+     * <p>
+     * The instance info objects given to listeners are shared and must not be modified, see
+     * {@link KerykeionEngine#setCopyInstanceInfo(boolean)}.
+     * <p>
+     * During a callback, {@link EventMetadata#current()} tells when the event was read and where in its log it is.
+     * <p>
+     * With replay, a listener added after the engine has started first receives what is already known, instead of
+     * having to wait for the next change: every tracked instance as not new, the last state of each instance (with
+     * every key as a change for state diff listeners), and the entering entry of each open world as not new. Live play
+     * log lines are not replayed, but if no play log listener was registered before, the play log of each open world is
+     * read from its start (or the offset store's offset) as if the world had just been entered. When reading instances
+     * in parallel, an event that is being delivered while the listener is added may arrive before the replay.
+     *
+     * @param listener             The listener to add
+     * @param requiredTickInterval The tick interval required by this listener in milliseconds
+     * @param executor             The executor to use for this listener, can be null to listen on the engine's thread,
+     *                             or on a virtual thread lane, see
+     *                             {@link KerykeionEngine#setVirtualThreadListeners(boolean)}
+     * @param replay               Whether a listener added after starting should receive the current state
+     * @throws IllegalArgumentException if the listener is not one of the more specific interfaces
+     */
+    public void addListener(KerykeionListener listener, long requiredTickInterval, Executor executor, boolean replay) {
+        if (executor == null && this.virtualThreadListeners) {
+            executor = new SerialExecutor(VirtualThreads.getFactory());
+        }
+        if (executor != null) {
+            executor = new InstrumentedExecutor(executor, this.metrics);
+        }
+        Registration registration = new Registration(listener, Math.max(requiredTickInterval, 1), replay);
+        if (listener instanceof HermesInstanceListener) {
+            registration.instanceListeners.add(HermesInstanceListener.wrap((HermesInstanceListener) listener, executor));
+        }
+        if (listener instanceof HermesStateListener) {
+            registration.stateListeners.add(HermesStateListener.wrap((HermesStateListener) listener, executor));
+        }
+        if (listener instanceof HermesStateDiffListener) {
+            registration.stateDiffListeners.add(HermesStateDiffListener.wrap(HermesStateDiffListener.filter((HermesStateDiffListener) listener), executor));
+        }
+        if (listener instanceof HermesWorldLogListener) {
+            registration.worldLogListeners.add(HermesWorldLogBatchListener.wrap(this.recordLatency(HermesWorldLogBatchListener.adapt(HermesTypedWorldLogListener.adapt((HermesWorldLogListener) listener))), executor));
+        }
+        if (listener instanceof HermesTypedWorldLogListener) {
+            registration.worldLogListeners.add(HermesWorldLogBatchListener.wrap(this.recordLatency(HermesWorldLogBatchListener.adapt((HermesTypedWorldLogListener) listener)), executor));
+        }
+        if (listener instanceof HermesWorldLogBatchListener) {
+            registration.worldLogListeners.add(HermesWorldLogBatchListener.wrap(this.recordLatency((HermesWorldLogBatchListener) listener), executor));
+        }
+        if (listener instanceof HermesRestrictedPlayLogListener) {
+            registration.livePlayLogListeners.add(HermesRestrictedPlayLogBatchListener.wrap(HermesRestrictedPlayLogBatchListener.adapt((HermesRestrictedPlayLogListener) listener), executor));
+        }
+        if (listener instanceof HermesRestrictedPlayLogBatchListener) {
+            registration.livePlayLogListeners.add(HermesRestrictedPlayLogBatchListener.wrap((HermesRestrictedPlayLogBatchListener) listener, executor));
+        }
+        if (listener instanceof HermesRestrictedPlayLogBufferListener) {
+            registration.livePlayLogBufferListeners.add(HermesRestrictedPlayLogBufferListener.wrap((HermesRestrictedPlayLogBufferListener) listener, executor));
+        }
+        if (listener instanceof HermesRestrictedPlayLogCaughtUpListener) {
+            registration.livePlayLogCaughtUpListeners.add(HermesRestrictedPlayLogCaughtUpListener.wrap((HermesRestrictedPlayLogCaughtUpListener) listener, executor));
+        }
+        if (registration.isEmpty()) {
+            throw new IllegalArgumentException("Unknown listener type! Please implement one of the more specific interfaces.");
+        }
+        synchronized (this.registrations) {
+            this.registrations.add(registration);
+            if (this.started) {
+                this.pendingRegistrations.add(registration);
+            } else {
+                this.apply(registration);
+            }
+            this.updateTickInterval();
+        }
+    }
+
+    /**
+     * Removes a listener that was added to this engine. Calls that were already handed to the listener's executor still
+     * run. If the same listener was added more than once, only the earliest registration is removed.
+     *
+     * @return true if the listener was registered
+     */
+    public boolean removeListener(KerykeionListener listener) {
+        synchronized (this.registrations) {
+            Registration registration = null;
+            for (Registration r : this.registrations) {
+                if (r.listener == listener) {
+                    registration = r;
+                    break;
+                }
+            }
+            if (registration == null) return false;
+            this.registrations.remove(registration);
+            registration.removed = true;
+            if (!this.pendingRegistrations.remove(registration)) {
+                this.instanceListeners.removeAll(registration.instanceListeners);
+                this.stateListeners.removeAll(registration.stateListeners);
+                this.stateDiffListeners.removeAll(registration.stateDiffListeners);
+                this.worldLogListeners.removeAll(registration.worldLogListeners);
+                this.livePlayLogListeners.removeAll(registration.livePlayLogListeners);
+                this.livePlayLogBufferListeners.removeAll(registration.livePlayLogBufferListeners);
+                this.livePlayLogCaughtUpListeners.removeAll(registration.livePlayLogCaughtUpListeners);
+            }
+            this.updateTickInterval();
+            return true;
+        }
+    }
+
+    /**
+     * Records the time from new entries being written to the listener being called with them, on the thread that calls
+     * the listener.
+     */
+    private HermesWorldLogBatchListener recordLatency(HermesWorldLogBatchListener listener) {
+        return (instanceInfo, entries, isNew) -> {
+            if (isNew) {
+                long currentTime = System.currentTimeMillis();
+                for (WorldLogEntry entry : entries) {
+                    if (entry.getTime() > 0) this.metrics.worldLogLatency.record(currentTime - entry.getTime());
+                }
+            }
+            listener.onWorldLogEntries(instanceInfo, entries, isNew);
+        };
+    }
+
+    private void apply(Registration registration) {
+        this.instanceListeners.addAll(registration.instanceListeners);
+        this.stateListeners.addAll(registration.stateListeners);
+        this.stateDiffListeners.addAll(registration.stateDiffListeners);
+        this.worldLogListeners.addAll(registration.worldLogListeners);
+        this.livePlayLogListeners.addAll(registration.livePlayLogListeners);
+        this.livePlayLogBufferListeners.addAll(registration.livePlayLogBufferListeners);
+        this.livePlayLogCaughtUpListeners.addAll(registration.livePlayLogCaughtUpListeners);
+    }
+
+    /**
+     * Sets the tick interval to the lowest one required by a registered listener, and wakes up the main loop in case it
+     * is now due to tick sooner.
+     */
+    private void updateTickInterval() {
+        long tickInterval = Long.MAX_VALUE;
+        for (Registration registration : this.registrations) {
+            tickInterval = Math.min(tickInterval, registration.requiredTickInterval);
+        }
+        if (tickInterval == Long.MAX_VALUE && this.started) {
+            tickInterval = IDLE_TICK_INTERVAL;
+        }
+        synchronized (this.tickIntervalLock) {
+            if (tickInterval == this.tickInterval) return;
+            this.tickInterval = tickInterval;
+            this.tickIntervalLock.notifyAll();
+        }
+        if (this.started) {
+            this.fileWatcher.setPollIntervals(tickInterval, this.maxPollInterval);
+        }
+    }
+
+    /**
+     * Enables or disables the file watching engine. When enabled, the engine will wait for changes using a
+     * {@link java.nio.file.WatchService} and only read files that have actually changed instead of reading every file
+     * every tick. The tick interval still limits how often the engine ticks.
+     * <p>
+     * Files in directories that can't be watched (e.g. don't exist yet), or that are changed while the watch service
+     * overflows, are still polled.
+     *
+     * @param useWatchService true to use the file watching engine, false to poll every tick (default)
+     * @throws IllegalStateException if the engine has already been started
+     */
+    public synchronized void setUseWatchService(boolean useWatchService) {
+        if (this.started) {
+            throw new IllegalStateException("Kerykeion already started, the watch service needs to be enabled earlier!");
+        }
+        this.useWatchService = useWatchService;
+    }
+
+    /**
+     * Enables adaptive polling. Each polled file gets its own schedule: a file that is polled without having changed is
+     * polled half as often, up to the given maximum interval, and a file that has changed is polled every tick again.
+     * Idle instances and closed worlds then cost far less, while the files that are actively being written stay at the
+     * tick interval.
+     * <p>
+     * The first change to a file that has backed off can be noticed up to the maximum interval late. When using the
+     * watch service, this only applies to files that can't be watched.
+     *
+     * @param maxPollInterval The maximum interval in milliseconds between polls of an unchanged file, or 0 to poll
+     *                        every file every tick (default)
+     * @throws IllegalStateException if the engine has already been started
+     */
+    public synchronized void setMaxPollInterval(long maxPollInterval) {
+        if (this.started) {
+            throw new IllegalStateException("Kerykeion already started, the max poll interval needs to be set earlier!");
+        }
+        this.maxPollInterval = maxPollInterval;
+    }
+
+    /**
+     * Sets how many unread bytes a world log or live play log needs before they are memory mapped instead of being read
+     * through a buffer, which is mostly useful when a player rejoins a world with a very large play log. Memory mapping
+     * is disabled by default.
+     * <p>
+     * On Windows, a file cannot be deleted while it is mapped, and mappings are only released once garbage collected.
+     *
+     * @param memoryMapThreshold The minimum number of unread bytes to memory map, or {@link Long#MAX_VALUE} to disable
+     * @throws IllegalStateException    if the engine has already been started
+     * @throws IllegalArgumentException if the threshold is not positive
+     */
+    public synchronized void setMemoryMapThreshold(long memoryMapThreshold) {
+        if (this.started) {
+            throw new IllegalStateException("Kerykeion already started, the memory map threshold needs to be set earlier!");
+        }
+        if (memoryMapThreshold <= 0) {
+            throw new IllegalArgumentException("Memory map threshold must be positive!");
+        }
+        this.worldLogTracker.setMemoryMapThreshold(memoryMapThreshold);
+        this.livePlayLogTracker.setMemoryMapThreshold(memoryMapThreshold);
+    }
+
+    /**
+     * Sets how many unread bytes a live play log needs when it is opened, e.g. when a player rejoins a world, for those
+     * bytes to be read on a low priority background thread instead of in the tick. Lines written after the play log was
+     * opened are then delivered right away while the older ones are delivered a few thousand per tick, so they can be
+     * interleaved. {@link HermesRestrictedPlayLogCaughtUpListener} is told when a play log's older lines have all been
+     * delivered. Play log listeners are still only called from ticks. Disabled by default.
+     *
+     * @param backgroundReplayThreshold The minimum number of unread bytes to read in the background, or
+     *                                  {@link Long#MAX_VALUE} to disable
+     * @throws IllegalStateException    if the engine has already been started
+     * @throws IllegalArgumentException if the threshold is not positive
+     */
+    public synchronized void setBackgroundReplayThreshold(long backgroundReplayThreshold) {
+        if (this.started) {
+            throw new IllegalStateException("Kerykeion already started, the background replay threshold needs to be set earlier!");
+        }
+        if (backgroundReplayThreshold <= 0) {
+            throw new IllegalArgumentException("Background replay threshold must be positive!");
+        }
+        this.livePlayLogTracker.setBacklogThreshold(backgroundReplayThreshold);
+    }
+
+    /**
+     * Enables persisting how far each world log and live play log has been read, so that after a restart the engine
+     * resumes reading them instead of replaying them from the start. Logs that have been truncated or replaced since
+     * are still read from the start.
+     * <p>
+     * With this enabled, world log listeners will not receive most entries that were already read in a previous run
+     * (the entering entry of a world that is still open is replayed), and play logs are no longer re-read when a
+     * player rejoins a world. Engines running at the same time should not share an offset store path.
+     * <p>
+     * Offsets are recorded once events have been handed to listeners, which for listeners with an executor is when
+     * they are queued, not when they have run. Events still queued in an executor when the process dies are not
+     * delivered again after a restart.
+     *
+     * @param offsetStorePath The file to store read offsets in, or null to disable (default)
+     * @throws IllegalStateException if the engine has already been started
+     */
+    public synchronized void setOffsetStorePath(Path offsetStorePath) {
+        if (this.started) {
+            throw new IllegalStateException("Kerykeion already started, the offset store needs to be set earlier!");
+        }
+        this.offsetStore.enable(offsetStorePath);
+    }
+
+    /**
+     * By default, every listener receives the same instance info object for an instance, which must not be modified.
+     * Enabling this gives every listener call its own copy instead, which is only needed if listeners modify the
+     * instance info they receive.
+     *
+     * @param copyInstanceInfo true to give each listener call a deep copy of the instance info, false to share it
+     *                         (default)
+     * @throws IllegalStateException if the engine has already been started
+     */
+    public synchronized void setCopyInstanceInfo(boolean copyInstanceInfo) {
+        if (this.started) {
+            throw new IllegalStateException("Kerykeion already started, instance info copying needs to be set earlier!");
+        }
+        this.instanceTracker.setCopyInstanceInfo(copyInstanceInfo);
+    }
+
+    /**
+     * Sets how often the alive files of known instances are checked, to detect closed or crashed instances sooner.
+     * Checking an alive file is a single small read. Looking for new instances still happens every 1000ms, and
+     * checks can't happen more often than the tick interval.
+     *
+     * @param aliveCheckInterval The alive check interval in milliseconds, default 950
+     * @throws IllegalStateException if the engine has already been started
+     */
+    public synchronized void setAliveCheckInterval(long aliveCheckInterval) {
+        if (this.started) {
+            throw new IllegalStateException("Kerykeion already started, the alive check interval needs to be set earlier!");
+        }
+        this.aliveCheckInterval = Math.max(1, Math.min(aliveCheckInterval, INSTANCE_CHECK_INTERVAL));
+    }
+
+    /**
+     * Sets how many threads are used to read the files of different instances. With more than 1 thread, each instance
+     * is read on a worker pool, and an instance that is slow to read (e.g. replaying a large play log) no longer delays
+     * the others. Events for a single instance are still delivered in order.
+     * <p>
+     * With more than 1 thread, listeners without an executor (or virtual thread lane) will be called from multiple
+     * threads at the same time, for different instances, so they need to be thread safe. Instance listeners are still
+     * called on the engine's thread.
+     *
+     * @param parallelism The number of threads to read instances with, 1 to read everything on the engine's thread
+     *                    (default)
+     * @throws IllegalStateException    if the engine has already been started
+     * @throws IllegalArgumentException if parallelism is less than 1
+     */
+    public synchronized void setParallelism(int parallelism) {
+        if (this.started) {
+            throw new IllegalStateException("Kerykeion already started, parallelism needs to be set earlier!");
+        }
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be at least 1!");
+        }
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Gives every listener that is added without an executor its own lane on virtual threads, where it is called in
+     * order, one event at a time, without holding up the engine or other listeners. Listeners that block, e.g. to write
+     * files or talk to other programs, then don't need a thread pool to be sized for them. Lanes are unbounded, use a
+     * {@link BoundedDispatcher} for listeners that may fall far behind.
+     * <p>
+     * Virtual threads need Java 21 or later. On older versions this has no effect and listeners without an executor
+     * stay on the engine's thread, see {@link KerykeionEngine#supportsVirtualThreads()}. Only affects listeners added
+     * after this is set.
+     *
+     * @param virtualThreadListeners true to give listeners without an executor a virtual thread lane, false to call
+     *                               them on the engine's thread (default)
+     */
+    public void setVirtualThreadListeners(boolean virtualThreadListeners) {
+        this.virtualThreadListeners = virtualThreadListeners && VirtualThreads.isSupported();
+    }
+
+    /**
+     * @return true if virtual threads are available for {@link KerykeionEngine#setVirtualThreadListeners(boolean)}
+     */
+    public static boolean supportsVirtualThreads() {
+        return VirtualThreads.isSupported();
+    }
+
+    /**
+     * Enables publishing a {@link KerykeionSnapshot} of every instance after each tick, see
+     * {@link KerykeionEngine#getSnapshot()}. With snapshots, world logs and states are read even if no listener needs
+     * them, and the engine can be started without any listeners, in which case it ticks once a second.
+     *
+     * @param snapshotsEnabled true to publish snapshots, false to not keep them (default)
+     * @throws IllegalStateException if the engine has already been started
+     */
+    public synchronized void setSnapshotsEnabled(boolean snapshotsEnabled) {
+        if (this.started) {
+            throw new IllegalStateException("Kerykeion already started, snapshots need to be enabled earlier!");
+        }
+        this.snapshotsEnabled = snapshotsEnabled;
+    }
+
+    /**
+     * Enables indexing the world log of every instance as it is read, see
+     * {@link KerykeionEngine#getWorldLogIndex(Path)}. With the index, world logs are read even if no listener needs
+     * them, and the engine can be started without any listeners, in which case it ticks once a second. When resuming
+     * from the offset store, the skipped part of a world log is still read once to index it.
+     *
+     * @param worldLogIndexEnabled true to index world logs, false to not (default)
+     * @throws IllegalStateException if the engine has already been started
+     */
+    public synchronized void setWorldLogIndexEnabled(boolean worldLogIndexEnabled) {
+        if (this.started) {
+            throw new IllegalStateException("Kerykeion already started, the world log index needs to be enabled earlier!");
+        }
+        this.worldLogIndexEnabled = worldLogIndexEnabled;
+        this.worldLogTracker.setIndexEnabled(worldLogIndexEnabled);
+    }
+
+    /**
+     * Starts the engine. At least one listener needs to be added before this is called, unless snapshots or the world
+     * log index are enabled. More can be added and removed afterwards. The first tick will happen after the tick
+     * interval.
+     */
+    public void start() {
+        this.start(false);
+    }
+
+    /**
+     * Starts the engine. At least one listener needs to be added before this is called, unless snapshots or the world
+     * log index are enabled. More can be added and removed afterwards. The first tick will happen after the tick
+     * interval.
+     *
+     * @param tickOnce If true, the engine will tick once on the calling thread before starting the scheduled ticks.
+     */
+    public synchronized void start(boolean tickOnce) {
+        if (this.started) return;
+
+        synchronized (this.registrations) {
+            if (this.registrations.isEmpty() && !this.snapshotsEnabled && !this.worldLogIndexEnabled) {
+                throw new IllegalStateException("No listeners added! Add at least one listener before starting!");
+            }
+            // Listeners added from now on are applied by the tick
+            this.started = true;
+            // Without listeners (snapshots or the index only) this switches to the idle interval
+            this.updateTickInterval();
+        }
+
+        if (this.useWatchService) {
+            this.fileWatcher.enable();
+        }
+        this.fileWatcher.setPollIntervals(this.tickInterval, this.maxPollInterval);
+        this.offsetStore.load();
+        this.createWorkerPool();
+        if (tickOnce) {
+            this.tick();
+        }
+        new Thread(this::mainLoop, "Kerykeion").start();
+    }
+
+    /**
+     * Creates the pool that instances are read on if the parallelism is above 1. Called when starting, or directly by
+     * benchmarks that tick without starting.
+     */
+    synchronized void createWorkerPool() {
+        if (this.parallelism <= 1 || this.workerPool != null) return;
+        AtomicInteger workerCount = new AtomicInteger();
+        this.workerPool = Executors.newFixedThreadPool(this.parallelism, r -> {
+            Thread thread = new Thread(r, "Kerykeion Worker " + workerCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    void shutdownWorkerPool() {
+        if (this.workerPool != null) {
+            this.workerPool.shutdown();
+        }
+    }
+
+    /**
+     * Waits until every instance that was handed to the worker pool has been read, so that a tick can be timed as a
+     * whole. Returns immediately without a worker pool. Should be called on the thread that ticks.
+     */
+    void awaitInstanceTicks() {
+        this.instanceTicks.arriveAndAwaitAdvance();
+    }
+
+    @SuppressWarnings("BusyWait")
+    private void mainLoop() {
+        try {
+            while (this.shouldRun.get()) {
+                this.tick();
+                try {
+                    this.sleepTickInterval();
+                    if (this.livePlayLogTracker.hasPendingBacklogs()) {
+                        // Keep ticking to deliver the backlogs, without holding up changes
+                        this.fileWatcher.processEvents();
+                    } else {
+                        // Wait for changes or polls, but wake up in time to check on instances
+                        this.fileWatcher.await(this.aliveCheckInterval - (System.currentTimeMillis() - this.lastAliveCheck));
+                    }
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        } catch (Throwable t) {
+            Kerykeion.errorLogger.accept("Kerykeion encountered an error and will stop!", t);
+            throw t;
+        } finally {
+            this.shutdownWorkerPool();
+            this.livePlayLogTracker.close();
+            this.fileWatcher.close();
+            this.offsetStore.save();
+            this.stopped = true;
+            this.shouldRun.set(false);
+        }
+    }
+
+    /**
+     * Sleeps for the tick interval, or less if the interval is lowered while sleeping.
+     */
+    private void sleepTickInterval() throws InterruptedException {
+        long sleepStart = System.currentTimeMillis();
+        synchronized (this.tickIntervalLock) {
+            long remaining;
+            // Subtracting the elapsed time rather than adding the interval to the start can't overflow
+            while (this.shouldRun.get() && (remaining = this.tickInterval - (System.currentTimeMillis() - sleepStart)) > 0) {
+                this.tickIntervalLock.wait(remaining);
+            }
+        }
+    }
+
+    synchronized void tick() {
+        Throwable workerFailure = this.workerFailure.getAndSet(null);
+        if (workerFailure != null) {
+            throw new RuntimeException("Failed to tick instance", workerFailure);
+        }
+        long tickStart = System.nanoTime();
+        long l = System.currentTimeMillis();
+        this.applyPendingRegistrations();
+        if (Math.abs(l - this.lastInstanceCheck) > INSTANCE_CHECK_INTERVAL) {
+            this.lastInstanceCheck = l;
+            this.lastAliveCheck = l;
+            this.fireInstanceResult(this.instanceTracker.tick());
+            this.metrics.instanceCheckTime.record((System.nanoTime() - tickStart) / 1000);
+        } else if (Math.abs(l - this.lastAliveCheck) > this.aliveCheckInterval) {
+            this.lastAliveCheck = l;
+            this.fireInstanceResult(this.instanceTracker.checkAlive());
+        }
+        this.tickInstances();
+        if (this.snapshotsEnabled) {
+            this.publishSnapshot(l);
+        }
+        this.fileWatcher.clearOverflow();
+        this.offsetStore.saveIfDue(l);
+        this.metrics.tickTime.record((System.nanoTime() - tickStart) / 1000);
+    }
+
+    /**
+     * Starts delivering to listeners that were added since the last tick, and replays what is already known to them.
+     * Instances are replayed right away, the files of each instance are replayed before that instance is next read.
+     */
+    private void applyPendingRegistrations() {
+        Registration registration;
+        while ((registration = this.pendingRegistrations.poll()) != null) {
+            synchronized (this.registrations) {
+                if (registration.removed) continue;
+                this.apply(registration);
+            }
+            if (!registration.replay) continue;
+            Collection<HermesInstance> instances = this.instanceTracker.getInstances();
+            EventMetadata.set(EventMetadata.detected(-1));
+            for (HermesInstanceListener lis : registration.instanceListeners) {
+                instances.forEach(i -> lis.onNewInstance(i.getInstanceInfoJson(), false));
+            }
+            EventMetadata.set(null);
+            if (registration.needsFileReplay()) {
+                for (HermesInstance instance : instances) {
+                    this.pendingReplays.computeIfAbsent(instance, i -> new CopyOnWriteArrayList<>()).add(registration);
+                }
+            }
+        }
+    }
+
+    /**
+     * Replays the last state and the current world of the instance to listeners that were added after starting.
+     */
+    private void replayInstanceFiles(HermesInstance instance, List<Registration> registrations) {
+        JsonObject state = this.stateTracker.getState(instance);
+        WorldLogEntry currentWorld = this.worldLogTracker.getCurrentWorldEntry(instance);
+        EventMetadata.set(EventMetadata.detected(-1));
+        for (Registration registration : registrations) {
+            if (registration.removed) continue;
+            if (state != null) {
+                registration.stateListeners.forEach(lis -> lis.onInstanceStateChange(instance.getInstanceInfoJson(), state));
+                JsonObject changes = StateTracker.diff(null, state);
+                registration.stateDiffListeners.forEach(lis -> lis.onInstanceStateDiff(instance.getInstanceInfoJson(), state, changes));
+            }
+            if (currentWorld != null) {
+                List<WorldLogEntry> entries = Collections.singletonList(currentWorld);
+                registration.worldLogListeners.forEach(lis -> lis.onWorldLogEntries(instance.getInstanceInfoJson(), entries, false));
+            }
+        }
+    }
+
+    private void fireInstanceResult(InstanceTracker.TickResult result) {
+        if (!result.newInstances.isEmpty() || !result.closedInstances.isEmpty()) {
+            this.snapshotChanged.set(true);
+        }
+        this.metrics.trackedInstances = this.instanceTracker.getInstances().size();
+        int events = result.existingInstances.size() + result.newInstances.size() + result.closedInstances.size();
+        this.metrics.instanceEventsDispatched.add((long) events * this.instanceListeners.size());
+        if (events == 0) return;
+        EventMetadata.set(EventMetadata.detected(-1));
+        try {
+            this.instanceListeners.forEach(lis -> {
+                result.existingInstances.forEach(i -> lis.onNewInstance(i, false));
+                result.newInstances.forEach(i -> lis.onNewInstance(i, true));
+                result.closedInstances.forEach(lis::onInstanceClosed);
+            });
+        } finally {
+            EventMetadata.set(null);
+        }
+    }
+
+    /**
+     * Ticks the files of every instance, either on this thread or on the worker pool. On the worker pool, an instance
+     * that is still busy from a previous tick is skipped so that it can't hold up the others.
+     */
+    private void tickInstances() {
+        Collection<HermesInstance> instances = this.instanceTracker.getInstances();
+        this.instancesTicking.entrySet().removeIf(e -> {
+            if (instances.contains(e.getKey()) || e.getValue().get()) return false;
+            this.worldLogTracker.remove(e.getKey());
+            this.stateTracker.remove(e.getKey());
+            this.livePlayLogTracker.remove(e.getKey());
+            this.pendingReplays.remove(e.getKey());
+            this.instanceSnapshots.remove(e.getKey());
+            this.snapshotChanged.set(true);
+            return true;
+        });
+        for (HermesInstance instance : instances) {
+            AtomicBoolean ticking = this.instancesTicking.computeIfAbsent(instance, i -> new AtomicBoolean(false));
+            if (this.workerPool == null) {
+                this.tickInstanceFiles(instance);
+                continue;
+            }
+            if (!ticking.compareAndSet(false, true)) continue;
+            this.instanceTicks.register();
+            this.workerPool.execute(() -> {
+                try {
+                    this.tickInstanceFiles(instance);
+                } catch (Throwable t) {
+                    this.workerFailure.compareAndSet(null, t);
+                } finally {
+                    ticking.set(false);
+                    this.instanceTicks.arriveAndDeregister();
+                }
+            });
+        }
+    }
+
+    private void tickInstanceFiles(HermesInstance instance) {
+        try {
+            this.tickInstanceFilesInternal(instance);
+        } finally {
+            EventMetadata.set(null);
+        }
+    }
+
+    private void tickInstanceFilesInternal(HermesInstance instance) {
+        List<Registration> replays = this.pendingReplays.remove(instance);
+        if (replays != null) {
+            this.replayInstanceFiles(instance, replays);
+        }
+        boolean playLog = this.hasPlayLogListeners();
+        if (playLog) {
+            // Play log listeners may have been added after the open world was entered
+            this.livePlayLogTracker.track(instance, this.worldLogTracker.getCurrentWorldEntry(instance));
+        } else {
+            // The tracker isn't told about worlds without play log listeners, so its play logs would go stale
+            this.livePlayLogTracker.remove(instance);
+        }
+        if (this.snapshotsEnabled || this.worldLogIndexEnabled || !this.worldLogListeners.isEmpty() || playLog) {
+            this.tickWorldLog(instance, playLog);
+        }
+        if (this.snapshotsEnabled || !this.stateListeners.isEmpty() || !this.stateDiffListeners.isEmpty()) {
+            this.tickState(instance);
+        }
+        if (playLog) {
+            this.tickLivePlayLog(instance);
+        }
+        if (this.snapshotsEnabled) {
+            this.updateInstanceSnapshot(instance);
+        }
+    }
+
+    /**
+     * Replaces the snapshot of the instance if anything in it changed. Runs on the thread that ticked the instance.
+     */
+    private void updateInstanceSnapshot(HermesInstance instance) {
+        JsonObject state = this.stateTracker.getState(instance);
+        WorldLogEntry currentWorldEntry = this.worldLogTracker.getCurrentWorldEntry(instance);
+        Set<Path> livePlayLogWorlds = this.livePlayLogTracker.getOpenWorlds(instance);
+        KerykeionSnapshot.InstanceSnapshot previous = this.instanceSnapshots.get(instance);
+        if (previous != null && previous.state == state && previous.currentWorldEntry == currentWorldEntry && previous.livePlayLogWorlds.equals(livePlayLogWorlds)) {
+            return;
+        }
+        this.instanceSnapshots.put(instance, new KerykeionSnapshot.InstanceSnapshot(instance, state, currentWorldEntry, new HashSet<>(livePlayLogWorlds)));
+        this.snapshotChanged.set(true);
+    }
+
+    /**
+     * Publishes a new snapshot if any instance changed. Instances that haven't been read yet are included without
+     * their state and world.
+     */
+    private void publishSnapshot(long time) {
+        if (!this.snapshotChanged.getAndSet(false)) return;
+        Collection<HermesInstance> instances = this.instanceTracker.getInstances();
+        List<KerykeionSnapshot.InstanceSnapshot> snapshots = new ArrayList<>(instances.size());
+        for (HermesInstance instance : instances) {
+            snapshots.add(this.instanceSnapshots.computeIfAbsent(instance, i -> new KerykeionSnapshot.InstanceSnapshot(i, null, null, Collections.emptySet())));
+        }
+        this.snapshot = new KerykeionSnapshot(time, snapshots);
+    }
+
+    private void tickWorldLog(HermesInstance instance, boolean playLog) {
+        long start = System.nanoTime();
+        this.worldLogTracker.tick(instance, batch -> {
+            if (playLog) {
+                batch.entries.forEach(entry -> this.livePlayLogTracker.onWorldLogEntry(instance, entry));
+            }
+            this.metrics.worldLogEntriesDispatched.add((long) batch.entries.size() * this.worldLogListeners.size());
+            EventMetadata.set(EventMetadata.detected(batch.offset));
+            this.worldLogListeners.forEach(
+                    lis -> lis.onWorldLogEntries(
+                            instance.getInstanceInfoJson(),
+                            batch.entries,
+                            batch.isNew
+                    )
+            );
+        });
+        this.metrics.worldLogTime.record((System.nanoTime() - start) / 1000);
+    }
+
+    private void tickState(HermesInstance instance) {
+        long start = System.nanoTime();
+        this.stateTracker.tick(instance, change -> {
+            this.metrics.stateEventsDispatched.add(this.stateListeners.size());
+            this.metrics.stateDiffEventsDispatched.add(this.stateDiffListeners.size());
+            EventMetadata.set(EventMetadata.detected(-1));
+            this.stateListeners.forEach(lis -> lis.onInstanceStateChange(instance.getInstanceInfoJson(), change.state));
+            this.stateDiffListeners.forEach(lis -> lis.onInstanceStateDiff(instance.getInstanceInfoJson(), change.state, change.changes));
+        });
+        this.metrics.stateTime.record((System.nanoTime() - start) / 1000);
+    }
+
+    private boolean hasPlayLogListeners() {
+        return !this.livePlayLogListeners.isEmpty() || !this.livePlayLogBufferListeners.isEmpty()
+                || !this.livePlayLogCaughtUpListeners.isEmpty();
+    }
+
+    private void tickLivePlayLog(HermesInstance instance) {
+        long start = System.nanoTime();
+        EventMetadata.set(EventMetadata.detected(-1));
+        this.livePlayLogTracker.tick(
+                instance,
+                this.livePlayLogListeners.isEmpty() ? null : batch -> {
+                    this.metrics.playLogLinesDispatched.add((long) batch.lines.size() * this.livePlayLogListeners.size());
+                    EventMetadata.set(EventMetadata.detected(batch.offset));
+                    this.livePlayLogListeners.forEach(lis -> lis.onLivePlayLogEntries(batch.instanceInfo, batch.worldPath, batch.lines));
+                },
+                this.livePlayLogBufferListeners.isEmpty() ? null : this::dispatchPlayLogLine,
+                this.livePlayLogCaughtUpListeners.isEmpty() ? null : (instanceInfo, worldPath) -> {
+                    EventMetadata.set(EventMetadata.detected(-1));
+                    this.livePlayLogCaughtUpListeners.forEach(lis -> lis.onLivePlayLogCaughtUp(instanceInfo, worldPath));
+                }
+        );
+        this.metrics.playLogTime.record((System.nanoTime() - start) / 1000);
+    }
+
+    /**
+     * Hands the line to every buffer listener, resetting the buffer in between in case a listener moved its position.
+     */
+    private void dispatchPlayLogLine(JsonObject instanceInfo, Path worldPath, long offset, ByteBuffer line) {
+        int position = line.position();
+        int limit = line.limit();
+        this.metrics.playLogLinesDispatched.add(this.livePlayLogBufferListeners.size());
+        EventMetadata.set(EventMetadata.detected(offset));
+        for (HermesRestrictedPlayLogBufferListener lis : this.livePlayLogBufferListeners) {
+            lis.onLivePlayLogLine(instanceInfo, worldPath, offset, line);
+            line.limit(limit).position(position);
+        }
+    }
+
+    /**
+     * Stops the engine and waits up to a second for the main loop to finish. Can be called while a listener is holding
+     * up a tick.
+     *
+     * @return true if the engine stopped in time, false if it wasn't started or is still stopping
+     */
+    public boolean stop() {
+        if (!this.started) return false;
+        this.shouldRun.set(false);
+        synchronized (this.tickIntervalLock) {
+            this.tickIntervalLock.notifyAll();
+        }
+        this.fileWatcher.close(); // Wakes up the main loop if it is waiting for changes
+        int tries;
+        for (tries = 0; tries < 100 && !this.stopped; tries++) {
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+        }
+        return tries < 100;
+    }
+
+    /**
+     * @return this engine's metrics, which can be read at any time from any thread
+     */
+    public KerykeionMetrics getMetrics() {
+        return this.metrics;
+    }
+
+    /**
+     * Registers this engine's metrics with the platform MBean server as {@code me.duncanruns.kerykeion:type=Kerykeion}.
+     *
+     * @return true if the MBean was registered or already was, false if it failed
+     */
+    public boolean registerMBean() {
+        return this.registerMBean(null);
+    }
+
+    /**
+     * Registers this engine's metrics with the platform MBean server as
+     * {@code me.duncanruns.kerykeion:type=Kerykeion,name=<name>}, so that several engines can be registered at once.
+     *
+     * @param name The name to register the engine under, or null to leave it out
+     * @return true if the MBean was registered or already was, false if it failed
+     */
+    public synchronized boolean registerMBean(String name) {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName objectName = new ObjectName("me.duncanruns.kerykeion:type=Kerykeion" + (name == null ? "" : ",name=" + ObjectName.quote(name)));
+            if (!server.isRegistered(objectName)) {
+                server.registerMBean(this.metrics, objectName);
+            }
+            return true;
+        } catch (JMException e) {
+            Kerykeion.errorLogger.accept("Failed to register Kerykeion MBean", e);
+            return false;
+        }
+    }
+
+    /**
+     * Gets the latest snapshot of every instance, which is published after each tick that changed anything. This can be
+     * called from any thread without locking, e.g. by an overlay or HTTP handler that only needs the current state on
+     * demand.
+     *
+     * @return the latest snapshot, which is empty if snapshots are not enabled, see
+     * {@link KerykeionEngine#setSnapshotsEnabled(boolean)}
+     */
+    public KerykeionSnapshot getSnapshot() {
+        return this.snapshot;
+    }
+
+    /**
+     * Gets the index of an instance's world log, for looking up when worlds were entered and left, or reading the
+     * entries from a time range without replaying the whole log. The index keeps growing as the log is read, and can be
+     * used from any thread.
+     *
+     * @param gameDir The game directory of the instance
+     * @return the index, or null if there is no open instance with the game directory, its world log hasn't been read
+     * yet, or indexing is not enabled, see {@link KerykeionEngine#setWorldLogIndexEnabled(boolean)}
+     */
+    public WorldLogIndex getWorldLogIndex(Path gameDir) {
+        return this.worldLogTracker.getIndex(gameDir);
+    }
+
+    /**
+     * @return The age of the last heartbeat read from each instance's alive file in milliseconds, by game directory.
+     * Instances whose alive file has not been read yet, or without a game directory, are left out.
+     */
+    public synchronized Map<Path, Long> getHeartbeatAges() {
+        long currentTime = System.currentTimeMillis();
+        Map<Path, Long> ages = new LinkedHashMap<>();
+        for (HermesInstance instance : this.instanceTracker.getInstances()) {
+            long age = instance.getHeartbeatAge(currentTime);
+            if (age >= 0 && instance.getGameDir() != null) ages.put(instance.getGameDir(), age);
+        }
+        return ages;
+    }
+
+    public Path getHermesPath() {
+        return this.hermesPath;
+    }
+
+    public boolean hasStarted() {
+        return this.started;
+    }
+
+    /**
+     * @return true once {@link KerykeionEngine#stop()} has been called or the main loop has ended, even if it hasn't
+     * finished stopping yet
+     */
+    boolean isStopping() {
+        return !this.shouldRun.get();
+    }
+
+    public boolean hasStopped() {
+        return this.stopped;
+    }
+
+    /**
+     * A listener with the wrapped listeners it was added as.
+     */
+    private static class Registration {
+        private final KerykeionListener listener;
+        private final long requiredTickInterval;
+        private final boolean replay;
+        private final List<HermesInstanceListener> instanceListeners = new ArrayList<>(1);
+        private final List<HermesStateListener> stateListeners = new ArrayList<>(1);
+        private final List<HermesStateDiffListener> stateDiffListeners = new ArrayList<>(1);
+        private final List<HermesWorldLogBatchListener> worldLogListeners = new ArrayList<>(1);
+        private final List<HermesRestrictedPlayLogBatchListener> livePlayLogListeners = new ArrayList<>(1);
+        private final List<HermesRestrictedPlayLogBufferListener> livePlayLogBufferListeners = new ArrayList<>(1);
+        private final List<HermesRestrictedPlayLogCaughtUpListener> livePlayLogCaughtUpListeners = new ArrayList<>(1);
+        private volatile boolean removed = false;
+
+        private Registration(KerykeionListener listener, long requiredTickInterval, boolean replay) {
+            this.listener = listener;
+            this.requiredTickInterval = requiredTickInterval;
+            this.replay = replay;
+        }
+
+        private boolean isEmpty() {
+            return this.instanceListeners.isEmpty() && this.stateListeners.isEmpty() && this.stateDiffListeners.isEmpty()
+                    && this.worldLogListeners.isEmpty() && this.livePlayLogListeners.isEmpty()
+                    && this.livePlayLogBufferListeners.isEmpty() && this.livePlayLogCaughtUpListeners.isEmpty();
+        }
+
+        private boolean needsFileReplay() {
+            return !this.stateListeners.isEmpty() || !this.stateDiffListeners.isEmpty() || !this.worldLogListeners.isEmpty();
+        }
+    }
+}
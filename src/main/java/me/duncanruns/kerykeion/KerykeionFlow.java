@@ -0,0 +1,324 @@
+package me.duncanruns.kerykeion;
+
+import com.google.gson.JsonObject;
+import me.duncanruns.kerykeion.listeners.*;
+
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Publishers that expose an engine's events as streams with per-subscriber demand, for consumers that want to filter,
+ * window or throttle events instead of handling callbacks.
+ * <p>
+ * The interfaces mirror {@code java.util.concurrent.Flow} (and Reactive Streams), which are not available on Java 8, so
+ * adapting them to either is a matter of forwarding each method.
+ * <p>
+ * Each subscriber gets its own listener on the engine, added when it subscribes (with a replay of the current state,
+ * see {@link KerykeionEngine#addListener(KerykeionListener, long, java.util.concurrent.Executor, boolean)}) and removed
+ * when it cancels. Events are buffered until the subscriber requests them. When a subscriber's buffer is full, the
+ * thread delivering its events waits until it requests more, so nothing is dropped, but a subscriber that stops
+ * requesting holds up the engine until it is stopped, after which waiting events are dropped. Subscribers are called on
+ * the engine's threads, even with {@link KerykeionEngine#setVirtualThreadListeners(boolean)}, and should not block.
+ * <p>
+ * The streams never complete, they end when the subscriber cancels.
+ */
+@SuppressWarnings("unused")
+public final class KerykeionFlow {
+    private static final long OFFER_WAIT = 100; // How often a full buffer checks whether the engine is stopping
+
+    private KerykeionFlow() {
+    }
+
+    /**
+     * @param requiredTickInterval The tick interval required by the subscribers in milliseconds
+     * @param bufferSize           The number of events buffered for each subscriber before the engine waits for it
+     * @return a publisher of instances being found, already open or closed
+     */
+    public static Publisher<InstanceEvent> instanceEvents(KerykeionEngine engine, long requiredTickInterval, int bufferSize) {
+        return new EventPublisher<>(engine, requiredTickInterval, bufferSize, sink -> new HermesInstanceListener() {
+            @Override
+            public void onNewInstance(JsonObject instanceInfo, boolean isNew) {
+                sink.accept(new InstanceEvent(instanceInfo, isNew ? InstanceEvent.Type.NEW : InstanceEvent.Type.EXISTING));
+            }
+
+            @Override
+            public void onInstanceClosed(JsonObject instanceInfo) {
+                sink.accept(new InstanceEvent(instanceInfo, InstanceEvent.Type.CLOSED));
+            }
+        });
+    }
+
+    /**
+     * @param requiredTickInterval The tick interval required by the subscribers in milliseconds
+     * @param bufferSize           The number of events buffered for each subscriber before the engine waits for it
+     * @return a publisher of state changes, with the changed keys
+     */
+    public static Publisher<StateEvent> stateEvents(KerykeionEngine engine, long requiredTickInterval, int bufferSize) {
+        return new EventPublisher<>(engine, requiredTickInterval, bufferSize, sink ->
+                (HermesStateDiffListener) (instanceInfo, state, changes) -> sink.accept(new StateEvent(instanceInfo, state, changes)));
+    }
+
+    /**
+     * @param requiredTickInterval The tick interval required by the subscribers in milliseconds
+     * @param bufferSize           The number of events buffered for each subscriber before the engine waits for it
+     * @return a publisher of world log entries, one event per entry
+     */
+    public static Publisher<WorldLogEvent> worldLogEvents(KerykeionEngine engine, long requiredTickInterval, int bufferSize) {
+        return new EventPublisher<>(engine, requiredTickInterval, bufferSize, sink ->
+                (HermesWorldLogBatchListener) (instanceInfo, entries, isNew) -> {
+                    for (WorldLogEntry entry : entries) {
+                        sink.accept(new WorldLogEvent(instanceInfo, entry, isNew));
+                    }
+                });
+    }
+
+    /**
+     * @param requiredTickInterval The tick interval required by the subscribers in milliseconds
+     * @param bufferSize           The number of events buffered for each subscriber before the engine waits for it
+     * @return a publisher of live play log lines, one event per line
+     */
+    public static Publisher<PlayLogEvent> playLogEvents(KerykeionEngine engine, long requiredTickInterval, int bufferSize) {
+        return new EventPublisher<>(engine, requiredTickInterval, bufferSize, sink ->
+                (HermesRestrictedPlayLogBatchListener) (instanceInfo, worldPath, lines) -> {
+                    for (byte[] line : lines) {
+                        sink.accept(new PlayLogEvent(instanceInfo, worldPath, line));
+                    }
+                });
+    }
+
+    /**
+     * Mirrors {@code java.util.concurrent.Flow.Publisher}.
+     */
+    @FunctionalInterface
+    public interface Publisher<T> {
+        void subscribe(Subscriber<? super T> subscriber);
+    }
+
+    /**
+     * Mirrors {@code java.util.concurrent.Flow.Subscriber}.
+     */
+    public interface Subscriber<T> {
+        void onSubscribe(Subscription subscription);
+
+        void onNext(T item);
+
+        void onError(Throwable throwable);
+
+        void onComplete();
+    }
+
+    /**
+     * Mirrors {@code java.util.concurrent.Flow.Subscription}.
+     */
+    public interface Subscription {
+        void request(long n);
+
+        void cancel();
+    }
+
+    public static final class InstanceEvent {
+        public final JsonObject instanceInfo;
+        public final Type type;
+
+        private InstanceEvent(JsonObject instanceInfo, Type type) {
+            this.instanceInfo = instanceInfo;
+            this.type = type;
+        }
+
+        public enum Type {
+            /**
+             * The instance was already open when it was first found.
+             */
+            EXISTING,
+            NEW,
+            CLOSED
+        }
+    }
+
+    public static final class StateEvent {
+        public final JsonObject instanceInfo;
+        public final JsonObject state;
+        /**
+         * The top-level keys that changed, with json null for removed keys.
+         */
+        public final JsonObject changes;
+
+        private StateEvent(JsonObject instanceInfo, JsonObject state, JsonObject changes) {
+            this.instanceInfo = instanceInfo;
+            this.state = state;
+            this.changes = changes;
+        }
+    }
+
+    public static final class WorldLogEvent {
+        public final JsonObject instanceInfo;
+        public final WorldLogEntry entry;
+        public final boolean isNew;
+
+        private WorldLogEvent(JsonObject instanceInfo, WorldLogEntry entry, boolean isNew) {
+            this.instanceInfo = instanceInfo;
+            this.entry = entry;
+            this.isNew = isNew;
+        }
+    }
+
+    public static final class PlayLogEvent {
+        public final JsonObject instanceInfo;
+        public final Path worldPath;
+        /**
+         * The line including the trailing newline. Shared between subscribers and must not be modified.
+         */
+        public final byte[] line;
+
+        private PlayLogEvent(JsonObject instanceInfo, Path worldPath, byte[] line) {
+            this.instanceInfo = instanceInfo;
+            this.worldPath = worldPath;
+            this.line = line;
+        }
+    }
+
+    private static class EventPublisher<T> implements Publisher<T> {
+        private final KerykeionEngine engine;
+        private final long requiredTickInterval;
+        private final int bufferSize;
+        private final Function<Consumer<T>, KerykeionListener> listenerFactory;
+
+        private EventPublisher(KerykeionEngine engine, long requiredTickInterval, int bufferSize, Function<Consumer<T>, KerykeionListener> listenerFactory) {
+            if (bufferSize < 1) {
+                throw new IllegalArgumentException("Buffer size must be at least 1!");
+            }
+            this.engine = engine;
+            this.requiredTickInterval = requiredTickInterval;
+            this.bufferSize = bufferSize;
+            this.listenerFactory = listenerFactory;
+        }
+
+        @Override
+        public void subscribe(Subscriber<? super T> subscriber) {
+            EventSubscription<T> subscription = new EventSubscription<>(this.engine, subscriber, this.bufferSize);
+            KerykeionListener listener = this.listenerFactory.apply(subscription::offer);
+            subscription.listener = listener;
+            subscriber.onSubscribe(subscription);
+            // A direct executor so that the engine waits on the buffer itself instead of a virtual thread lane that would
+            // queue events without a bound
+            this.engine.addListener(listener, this.requiredTickInterval, Runnable::run, true);
+            if (subscription.isCancelled()) {
+                // Cancelled from onSubscribe, before the listener was added
+                this.engine.removeListener(listener);
+            }
+        }
+    }
+
+    /**
+     * Buffers events for one subscriber and hands them over as they are requested. Events are delivered by whichever
+     * thread offers an event or requests more, one thread at a time.
+     */
+    private static class EventSubscription<T> implements Subscription {
+        private final KerykeionEngine engine;
+        private final Subscriber<? super T> subscriber;
+        private final int bufferSize;
+        private final ArrayDeque<T> buffer;
+        private volatile KerykeionListener listener;
+        private long demand = 0;
+        private boolean cancelled = false;
+        private boolean draining = false;
+
+        private EventSubscription(KerykeionEngine engine, Subscriber<? super T> subscriber, int bufferSize) {
+            this.engine = engine;
+            this.subscriber = subscriber;
+            this.bufferSize = bufferSize;
+            this.buffer = new ArrayDeque<>(Math.min(bufferSize, 1024));
+        }
+
+        /**
+         * Buffers an event, waiting for space if the buffer is full. Gives up on the event if the engine is stopping,
+         * so that a subscriber that stopped requesting can't keep the engine from stopping.
+         */
+        private void offer(T item) {
+            synchronized (this) {
+                while (!this.cancelled && this.buffer.size() >= this.bufferSize) {
+                    if (this.engine.isStopping()) return;
+                    try {
+                        this.wait(OFFER_WAIT);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                }
+                if (this.cancelled) return;
+                this.buffer.add(item);
+            }
+            this.drain();
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                if (this.cancelInternal()) {
+                    this.subscriber.onError(new IllegalArgumentException("Requested " + n + " events, must be positive!"));
+                }
+                return;
+            }
+            synchronized (this) {
+                this.demand = this.demand + n < 0 ? Long.MAX_VALUE : this.demand + n;
+            }
+            this.drain();
+        }
+
+        @Override
+        public void cancel() {
+            this.cancelInternal();
+        }
+
+        /**
+         * @return true if this call cancelled the subscription
+         */
+        private boolean cancelInternal() {
+            synchronized (this) {
+                if (this.cancelled) return false;
+                this.cancelled = true;
+                this.buffer.clear();
+                this.notifyAll();
+            }
+            if (this.listener != null) {
+                this.engine.removeListener(this.listener);
+            }
+            return true;
+        }
+
+        private synchronized boolean isCancelled() {
+            return this.cancelled;
+        }
+
+        private void drain() {
+            synchronized (this) {
+                if (this.draining) return;
+                this.draining = true;
+            }
+            while (true) {
+                T item;
+                synchronized (this) {
+                    if (this.cancelled || this.demand == 0 || this.buffer.isEmpty()) {
+                        this.draining = false;
+                        return;
+                    }
+                    item = this.buffer.poll();
+                    if (this.demand != Long.MAX_VALUE) this.demand--;
+                    this.notifyAll();
+                }
+                try {
+                    this.subscriber.onNext(item);
+                } catch (Throwable t) {
+                    Kerykeion.errorLogger.accept("Error in Kerykeion subscriber, cancelling it", t);
+                    synchronized (this) {
+                        this.draining = false;
+                    }
+                    this.cancelInternal();
+                    return;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,317 @@
+package me.duncanruns.kerykeion;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters and histograms describing what Kerykeion is doing, see {@link KerykeionEngine#getMetrics()}. Everything is
+ * updated without locking and can be read from any thread.
+ * <p>
+ * Tick times include listeners that are called on Kerykeion's thread. For listeners with an executor, the time spent
+ * waiting in the executor and running the listener are recorded separately, so the read latency, queue time and run
+ * time together show whether a delay comes from Kerykeion or from a listener.
+ */
+@SuppressWarnings("unused")
+public final class KerykeionMetrics implements KerykeionMetricsMBean {
+    private static final long LOG_READ_LATENCY_SAMPLE_INTERVAL = 1000; // Logs are only stat'ed this often for the read latency
+
+    final Histogram tickTime = new Histogram();
+    final Histogram instanceCheckTime = new Histogram();
+    final Histogram worldLogTime = new Histogram();
+    final Histogram stateTime = new Histogram();
+    final Histogram playLogTime = new Histogram();
+    final Histogram readLatency = new Histogram();
+    final Histogram worldLogLatency = new Histogram();
+    final Histogram listenerQueueTime = new Histogram();
+    final Histogram listenerRunTime = new Histogram();
+
+    final LongAdder worldLogBytesRead = new LongAdder();
+    final LongAdder worldLogLinesRead = new LongAdder();
+    final LongAdder playLogBytesRead = new LongAdder();
+    final LongAdder playLogLinesRead = new LongAdder();
+    final LongAdder worldLogParseFailures = new LongAdder();
+    final LongAdder stateParseFailures = new LongAdder();
+    final LongAdder instanceInfoParseFailures = new LongAdder();
+    final LongAdder instanceEventsDispatched = new LongAdder();
+    final LongAdder stateEventsDispatched = new LongAdder();
+    final LongAdder stateDiffEventsDispatched = new LongAdder();
+    final LongAdder worldLogEntriesDispatched = new LongAdder();
+    final LongAdder playLogLinesDispatched = new LongAdder();
+    final LongAdder rejectedExecutions = new LongAdder();
+    final AtomicInteger openPlayLogs = new AtomicInteger(0);
+    volatile int trackedInstances = 0;
+
+    private final Map<Path, FileReadStats> fileReadStats = new ConcurrentHashMap<>();
+
+    KerykeionMetrics() {
+    }
+
+    FileReadStats openFile(Path path) {
+        return this.fileReadStats.computeIfAbsent(path, p -> new FileReadStats());
+    }
+
+    void closeFile(Path path) {
+        this.fileReadStats.remove(path);
+    }
+
+    void recordWorldLogRead(FileReadStats stats, Path path, long bytes, long lines) {
+        this.worldLogBytesRead.add(bytes);
+        this.worldLogLinesRead.add(lines);
+        this.recordRead(stats, path, bytes, lines);
+    }
+
+    void recordPlayLogRead(FileReadStats stats, Path path, long bytes, long lines) {
+        this.playLogBytesRead.add(bytes);
+        this.playLogLinesRead.add(lines);
+        this.recordRead(stats, path, bytes, lines);
+    }
+
+    private void recordRead(FileReadStats stats, Path path, long bytes, long lines) {
+        stats.bytes.add(bytes);
+        stats.lines.add(lines);
+        if (lines == 0) return;
+        // Log readers don't know the modification time, so sample it instead of adding a stat to every read
+        long currentTime = System.currentTimeMillis();
+        if (currentTime < stats.nextLatencySample) return;
+        stats.nextLatencySample = currentTime + LOG_READ_LATENCY_SAMPLE_INTERVAL;
+        try {
+            this.recordReadLatency(Files.getLastModifiedTime(path).toMillis());
+        } catch (IOException ignored) {
+        }
+    }
+
+    void recordReadLatency(long lastModified) {
+        this.readLatency.record(System.currentTimeMillis() - lastModified);
+    }
+
+    /**
+     * @return the time taken by whole ticks, in microseconds
+     */
+    public Histogram getTickTime() {
+        return this.tickTime;
+    }
+
+    /**
+     * @return the time taken to look for new and closed instances, in microseconds
+     */
+    public Histogram getInstanceCheckTime() {
+        return this.instanceCheckTime;
+    }
+
+    /**
+     * @return the time taken to read and dispatch an instance's world log, in microseconds
+     */
+    public Histogram getWorldLogTime() {
+        return this.worldLogTime;
+    }
+
+    /**
+     * @return the time taken to read and dispatch an instance's state, in microseconds
+     */
+    public Histogram getStateTime() {
+        return this.stateTime;
+    }
+
+    /**
+     * @return the time taken to read and dispatch an instance's live play logs, in microseconds
+     */
+    public Histogram getPlayLogTime() {
+        return this.playLogTime;
+    }
+
+    /**
+     * @return the time from a file's modification time to its new contents being handed to listeners, in milliseconds.
+     * State files are recorded on every read, logs at most once a second each.
+     */
+    public Histogram getReadLatency() {
+        return this.readLatency;
+    }
+
+    /**
+     * @return the time from the time written in new world log entries to world log listeners being called with them, in
+     * milliseconds, recorded for every listener call. This is the full delay a timer sees, including the game's write,
+     * the tick interval and the listener's executor.
+     */
+    public Histogram getWorldLogLatency() {
+        return this.worldLogLatency;
+    }
+
+    /**
+     * @return the time listener calls spent waiting in their executor, in microseconds
+     */
+    public Histogram getListenerQueueTime() {
+        return this.listenerQueueTime;
+    }
+
+    /**
+     * @return the time listener calls on an executor took to run, in microseconds
+     */
+    public Histogram getListenerRunTime() {
+        return this.listenerRunTime;
+    }
+
+    /**
+     * @return the bytes and lines read from each log that is currently open
+     */
+    public Map<Path, FileReadStats> getFileReadStats() {
+        return Collections.unmodifiableMap(new HashMap<>(this.fileReadStats));
+    }
+
+    @Override
+    public long getTicks() {
+        return this.tickTime.getCount();
+    }
+
+    @Override
+    public double getTickMeanMicros() {
+        return this.tickTime.getMean();
+    }
+
+    @Override
+    public long getTickP99Micros() {
+        return this.tickTime.getPercentile(99);
+    }
+
+    @Override
+    public long getTickMaxMicros() {
+        return this.tickTime.getMax();
+    }
+
+    @Override
+    public long getReadLatencyP50Millis() {
+        return this.readLatency.getPercentile(50);
+    }
+
+    @Override
+    public long getReadLatencyP99Millis() {
+        return this.readLatency.getPercentile(99);
+    }
+
+    @Override
+    public long getWorldLogLatencyP50Millis() {
+        return this.worldLogLatency.getPercentile(50);
+    }
+
+    @Override
+    public long getWorldLogLatencyP99Millis() {
+        return this.worldLogLatency.getPercentile(99);
+    }
+
+    @Override
+    public long getListenerQueueP99Micros() {
+        return this.listenerQueueTime.getPercentile(99);
+    }
+
+    @Override
+    public long getListenerRunP99Micros() {
+        return this.listenerRunTime.getPercentile(99);
+    }
+
+    @Override
+    public long getWorldLogBytesRead() {
+        return this.worldLogBytesRead.sum();
+    }
+
+    @Override
+    public long getWorldLogLinesRead() {
+        return this.worldLogLinesRead.sum();
+    }
+
+    @Override
+    public long getPlayLogBytesRead() {
+        return this.playLogBytesRead.sum();
+    }
+
+    @Override
+    public long getPlayLogLinesRead() {
+        return this.playLogLinesRead.sum();
+    }
+
+    @Override
+    public long getWorldLogParseFailures() {
+        return this.worldLogParseFailures.sum();
+    }
+
+    /**
+     * @return the number of times a state file could not be parsed, usually because it was read mid-write
+     */
+    @Override
+    public long getStateParseFailures() {
+        return this.stateParseFailures.sum();
+    }
+
+    @Override
+    public long getInstanceInfoParseFailures() {
+        return this.instanceInfoParseFailures.sum();
+    }
+
+    /**
+     * Dispatch counts are per listener, e.g. one state change with two state listeners counts twice.
+     */
+    @Override
+    public long getInstanceEventsDispatched() {
+        return this.instanceEventsDispatched.sum();
+    }
+
+    @Override
+    public long getStateEventsDispatched() {
+        return this.stateEventsDispatched.sum();
+    }
+
+    @Override
+    public long getStateDiffEventsDispatched() {
+        return this.stateDiffEventsDispatched.sum();
+    }
+
+    @Override
+    public long getWorldLogEntriesDispatched() {
+        return this.worldLogEntriesDispatched.sum();
+    }
+
+    @Override
+    public long getPlayLogLinesDispatched() {
+        return this.playLogLinesDispatched.sum();
+    }
+
+    /**
+     * @return the number of listener calls an executor rejected, which are dropped
+     */
+    @Override
+    public long getRejectedExecutions() {
+        return this.rejectedExecutions.sum();
+    }
+
+    @Override
+    public int getTrackedInstances() {
+        return this.trackedInstances;
+    }
+
+    @Override
+    public int getOpenPlayLogs() {
+        return this.openPlayLogs.get();
+    }
+
+    public static final class FileReadStats {
+        private final LongAdder bytes = new LongAdder();
+        private final LongAdder lines = new LongAdder();
+        private volatile long nextLatencySample = 0;
+
+        private FileReadStats() {
+        }
+
+        public long getBytes() {
+            return this.bytes.sum();
+        }
+
+        public long getLines() {
+            return this.lines.sum();
+        }
+    }
+}
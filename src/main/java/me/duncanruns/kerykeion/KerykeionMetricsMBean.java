@@ -0,0 +1,56 @@
+package me.duncanruns.kerykeion;
+
+/**
+ * The attributes of {@link KerykeionMetrics} exposed over JMX, see {@link KerykeionEngine#registerMBean()}.
+ */
+public interface KerykeionMetricsMBean {
+    long getTicks();
+
+    double getTickMeanMicros();
+
+    long getTickP99Micros();
+
+    long getTickMaxMicros();
+
+    long getReadLatencyP50Millis();
+
+    long getReadLatencyP99Millis();
+
+    long getWorldLogLatencyP50Millis();
+
+    long getWorldLogLatencyP99Millis();
+
+    long getListenerQueueP99Micros();
+
+    long getListenerRunP99Micros();
+
+    long getWorldLogBytesRead();
+
+    long getWorldLogLinesRead();
+
+    long getPlayLogBytesRead();
+
+    long getPlayLogLinesRead();
+
+    long getWorldLogParseFailures();
+
+    long getStateParseFailures();
+
+    long getInstanceInfoParseFailures();
+
+    long getInstanceEventsDispatched();
+
+    long getStateEventsDispatched();
+
+    long getStateDiffEventsDispatched();
+
+    long getWorldLogEntriesDispatched();
+
+    long getPlayLogLinesDispatched();
+
+    long getRejectedExecutions();
+
+    int getTrackedInstances();
+
+    int getOpenPlayLogs();
+}
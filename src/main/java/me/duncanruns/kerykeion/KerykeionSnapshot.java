@@ -0,0 +1,117 @@
+package me.duncanruns.kerykeion;
+
+import com.google.gson.JsonObject;
+
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * An immutable view of what an engine currently knows about every instance, see
+ * {@link KerykeionEngine#getSnapshot()}. Snapshots are replaced as a whole, so everything in one snapshot is from the
+ * same tick, and a snapshot can be kept and read from any thread.
+ * <p>
+ * The json objects are shared with listeners and must not be modified.
+ */
+@SuppressWarnings("unused")
+public final class KerykeionSnapshot {
+    static final KerykeionSnapshot EMPTY = new KerykeionSnapshot(0, Collections.emptyList());
+
+    private final long time;
+    private final List<InstanceSnapshot> instances;
+
+    KerykeionSnapshot(long time, List<InstanceSnapshot> instances) {
+        this.time = time;
+        this.instances = Collections.unmodifiableList(instances);
+    }
+
+    /**
+     * @return the time in milliseconds at which this snapshot was published, or 0 if nothing has been published yet
+     */
+    public long getTime() {
+        return this.time;
+    }
+
+    /**
+     * @return every tracked instance, in no particular order
+     */
+    public List<InstanceSnapshot> getInstances() {
+        return this.instances;
+    }
+
+    /**
+     * @return the instance with the given game directory, or null if there is none
+     */
+    public InstanceSnapshot getInstance(Path gameDir) {
+        for (InstanceSnapshot instance : this.instances) {
+            if (gameDir.equals(instance.gameDir)) return instance;
+        }
+        return null;
+    }
+
+    public static final class InstanceSnapshot {
+        private final JsonObject instanceInfo;
+        private final Path gameDir;
+        final JsonObject state;
+        final WorldLogEntry currentWorldEntry;
+        private final Path currentWorld;
+        final Set<Path> livePlayLogWorlds;
+
+        InstanceSnapshot(HermesInstance instance, JsonObject state, WorldLogEntry currentWorldEntry, Set<Path> livePlayLogWorlds) {
+            this.instanceInfo = instance.getInstanceInfoJson();
+            this.gameDir = instance.getGameDir();
+            this.state = state;
+            this.currentWorldEntry = currentWorldEntry;
+            this.currentWorld = resolveWorld(this.gameDir, currentWorldEntry);
+            this.livePlayLogWorlds = Collections.unmodifiableSet(livePlayLogWorlds);
+        }
+
+        private static Path resolveWorld(Path gameDir, WorldLogEntry entry) {
+            if (gameDir == null || entry == null) return null;
+            try {
+                return entry.resolveWorldPath(gameDir);
+            } catch (InvalidPathException e) {
+                return null;
+            }
+        }
+
+        public JsonObject getInstanceInfo() {
+            return this.instanceInfo;
+        }
+
+        public Path getGameDir() {
+            return this.gameDir;
+        }
+
+        /**
+         * @return the last state read from the instance, or null if none has been read yet
+         */
+        public JsonObject getState() {
+            return this.state;
+        }
+
+        /**
+         * @return the path of the world that is currently open, or null if no world is open
+         */
+        public Path getCurrentWorld() {
+            return this.currentWorld;
+        }
+
+        /**
+         * @return the entering entry of the world that is currently open, or null if no world is open
+         */
+        public WorldLogEntry getCurrentWorldEntry() {
+            return this.currentWorldEntry;
+        }
+
+        /**
+         * @return the worlds whose live play logs are being read, which is only tracked while a play log listener is
+         * registered. A world can stay in here for a moment after it was left, until its last lines are read.
+         */
+        public Set<Path> getLivePlayLogWorlds() {
+            return this.livePlayLogWorlds;
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package me.duncanruns.kerykeion;
 
+import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 
 import java.nio.file.Path;
@@ -8,6 +9,8 @@ import java.util.concurrent.Executor;
 import java.util.concurrent.RejectedExecutionException;
 
 public class KerykeionUtil {
+    private static final long RACY_WINDOW = 2000; // Coarsest common timestamp resolution (FAT)
+
     public static Path resolveGameDirRelativePath(Path gameDir, JsonObject relPathObj) {
         if (relPathObj == null) return null;
         boolean relative = relPathObj.get("relative").getAsBoolean();
@@ -19,6 +22,14 @@ public class KerykeionUtil {
         }
     }
 
+    /**
+     * @return true if a file or directory was read so soon after its modification time that a later change could leave
+     * the modification time the same, in which case an unchanged modification time doesn't mean it is unchanged
+     */
+    static boolean isModificationRacy(long readTime, long modifiedTime) {
+        return Math.abs(readTime - modifiedTime) < RACY_WINDOW;
+    }
+
     /**
      * Executes the given runnable on the given executor, ignoring any RejectedExecutionException.
      */
@@ -28,4 +39,54 @@ public class KerykeionUtil {
         } catch (RejectedExecutionException ignored) {
         }
     }
+
+    /**
+     * Executes the given runnable on the given executor, ignoring any RejectedExecutionException. If the executor is a
+     * {@link KeyedExecutor}, such as a {@link BoundedDispatcher}, the key lets it coalesce the runnable with a queued
+     * one for the same thing.
+     */
+    public static void executeIgnore(Executor executor, Object coalesceKey, Runnable runnable) {
+        if (!(executor instanceof KeyedExecutor)) {
+            executeIgnore(executor, runnable);
+            return;
+        }
+        try {
+            ((KeyedExecutor) executor).execute(coalesceKey, runnable);
+        } catch (RejectedExecutionException ignored) {
+        }
+    }
+
+    /**
+     * @return a key for coalescing one listener's updates about one instance. The listener is compared by identity so
+     * that listeners sharing a dispatcher don't replace each other's updates, and the instance by its game directory so
+     * that copies of the instance info match without hashing all of it.
+     */
+    public static Object coalesceKey(Object listener, JsonObject instanceInfo) {
+        JsonElement gameDir = instanceInfo.get("game_dir");
+        return new CoalesceKey(listener, gameDir != null && gameDir.isJsonPrimitive() ? gameDir.getAsString() : instanceInfo);
+    }
+
+    private static final class CoalesceKey {
+        private final Object listener;
+        private final Object instance; // The game directory string, or the instance info itself if it has none
+
+        private CoalesceKey(Object listener, Object instance) {
+            this.listener = listener;
+            this.instance = instance;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof CoalesceKey)) return false;
+            CoalesceKey other = (CoalesceKey) o;
+            if (this.listener != other.listener) return false;
+            return this.instance instanceof String ? this.instance.equals(other.instance) : this.instance == other.instance;
+        }
+
+        @Override
+        public int hashCode() {
+            int instanceHash = this.instance instanceof String ? this.instance.hashCode() : System.identityHashCode(this.instance);
+            return 31 * System.identityHashCode(this.listener) + instanceHash;
+        }
+    }
 }
@@ -0,0 +1,13 @@
+package me.duncanruns.kerykeion;
+
+import java.util.concurrent.Executor;
+
+/**
+ * An executor that can be told what a task delivers, so that it can coalesce tasks for the same thing.
+ */
+interface KeyedExecutor extends Executor {
+    /**
+     * @param key The key identifying what the task delivers, e.g. the instance for state updates, or null
+     */
+    void execute(Object key, Runnable task);
+}
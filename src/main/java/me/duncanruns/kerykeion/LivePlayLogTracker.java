@@ -1,109 +1,359 @@
 package me.duncanruns.kerykeion;
 
 import com.google.gson.JsonObject;
-import com.google.gson.JsonSyntaxException;
-import com.google.gson.annotations.SerializedName;
-import me.duncanruns.kerykeion.listeners.HermesWorldLogListener;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.nio.file.InvalidPathException;
 import java.nio.file.Path;
-import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
 import java.util.function.Consumer;
 
-class LivePlayLogTracker implements HermesWorldLogListener {
-    private final Map<Path, LivePlayLog> livePlayLogs = new HashMap<>(); // world path -> stuff
+class LivePlayLogTracker {
+    private static final int BACKLOG_QUEUE_SIZE = 16; // Batches read ahead by the backlog reader
+    private static final int BACKLOG_BATCHES_PER_TICK = 8;
+    private static final int BACKLOG_CHUNK_LINES = 1024; // Lines per chunk when the backlog doesn't copy each line
 
-    @Override
-    public void onWorldLogEntry(JsonObject instanceInfo, JsonObject entry, boolean isNew) {
+    private final Map<HermesInstance, Map<Path, LivePlayLog>> livePlayLogs = new ConcurrentHashMap<>(); // instance -> world path -> stuff
+    private final FileWatcher fileWatcher;
+    private final OffsetStore offsetStore;
+    private final KerykeionMetrics metrics;
+    private long memoryMapThreshold = Long.MAX_VALUE;
+    private long backlogThreshold = Long.MAX_VALUE;
+    private ExecutorService backlogReader = null; // Created when first needed
+    private final AtomicInteger pendingBacklogs = new AtomicInteger();
+
+    public LivePlayLogTracker(FileWatcher fileWatcher, OffsetStore offsetStore, KerykeionMetrics metrics) {
+        this.fileWatcher = fileWatcher;
+        this.offsetStore = offsetStore;
+        this.metrics = metrics;
+    }
+
+    public void setMemoryMapThreshold(long memoryMapThreshold) {
+        this.memoryMapThreshold = memoryMapThreshold;
+    }
+
+    public void setBacklogThreshold(long backlogThreshold) {
+        this.backlogThreshold = backlogThreshold;
+    }
+
+    /**
+     * @return true if any backlog is still being replayed, in which case the tracker should be ticked again soon
+     */
+    public boolean hasPendingBacklogs() {
+        return this.pendingBacklogs.get() > 0;
+    }
+
+    /**
+     * Starts tracking the instance if it isn't tracked yet. The play log of the world that is already open is opened as
+     * if the world had just been entered, since its entering entry was read while nothing needed play logs. Should only
+     * be called while ticking the instance.
+     *
+     * @param currentWorldEntry the entering entry of the open world, or null if no world is open
+     */
+    public void track(HermesInstance instance, WorldLogEntry currentWorldEntry) {
+        if (this.livePlayLogs.containsKey(instance)) return;
+        this.livePlayLogs.put(instance, new HashMap<>());
+        if (currentWorldEntry != null) {
+            this.onWorldLogEntry(instance, currentWorldEntry);
+        }
+    }
+
+    /**
+     * Opens and closes live play logs as worlds are entered and left. Should only be called while ticking the instance.
+     */
+    public void onWorldLogEntry(HermesInstance instance, WorldLogEntry entry) {
         // {"world":{"relative":true,"path":"saves/New World (2)"},"type":"entering","time":1763434215136}
         // {"world":{"relative":true,"path":"saves/New World (2)"},"type":"leave","time":1763434227668}
-        WorldLogEntry worldLogEntry;
-        try {
-            worldLogEntry = Kerykeion.GSON.fromJson(entry, WorldLogEntry.class);
-        } catch (JsonSyntaxException e) {
-            Kerykeion.errorLogger.accept("Failed to parse world log entry for live play log", e);
-            return;
-        }
+        boolean entering = Objects.equals(entry.getType(), "entering");
+        if (!entering && !Objects.equals(entry.getType(), "leave")) return;
 
+        Path gameDir = instance.getGameDir();
+        if (gameDir == null) return;
         Path worldPath;
         try {
-            worldPath = KerykeionUtil.resolveGameDirRelativePath(
-                    Paths.get(instanceInfo.get("game_dir").getAsString()),
-                    worldLogEntry.worldPath
-            );
+            worldPath = entry.resolveWorldPath(gameDir);
         } catch (InvalidPathException e) {
             Kerykeion.errorLogger.accept("Failed to resolve world path for live play log", e);
             return;
         }
+        if (worldPath == null) return;
 
-        if (Objects.equals(worldLogEntry.type, "entering")) {
-            Optional.ofNullable(this.livePlayLogs.get(worldPath))
-                    .ifPresent(livePlayLog -> livePlayLog.logReader.close());
-            LivePlayLog lpl = new LivePlayLog(instanceInfo, worldPath, worldPath.resolve("hermes").resolve("restricted").resolve("play.log.enc"));
-            this.livePlayLogs.put(
+        Map<Path, LivePlayLog> instanceLivePlayLogs = this.livePlayLogs.computeIfAbsent(instance, i -> new HashMap<>());
+        if (entering) {
+            Optional.ofNullable(instanceLivePlayLogs.get(worldPath))
+                    .ifPresent(this::closeLivePlayLog);
+            Path path = worldPath.resolve("hermes").resolve("restricted").resolve("play.log.enc");
+            LivePlayLog lpl = new LivePlayLog(instance.getInstanceInfoJson(), worldPath, new LogReader(path, this.memoryMapThreshold), this.metrics.openFile(path));
+            this.metrics.openPlayLogs.incrementAndGet();
+            this.fileWatcher.watch(lpl.logReader.getPath());
+            lpl.logReader.skipTo(this.offsetStore.getResumeOffset(lpl.logReader.getPath()));
+            instanceLivePlayLogs.put(
                     worldPath,
                     lpl
             );
-        } else if (Objects.equals(worldLogEntry.type, "leave")) {
-            Optional.ofNullable(this.livePlayLogs.get(worldPath))
+        } else {
+            Optional.ofNullable(instanceLivePlayLogs.get(worldPath))
                     .ifPresent(livePlayLog -> {
                         if (!livePlayLog.used) {
-                            livePlayLog.logReader.close();
-                            this.livePlayLogs.remove(worldPath);
+                            this.closeLivePlayLog(livePlayLog);
+                            instanceLivePlayLogs.remove(worldPath);
                         } else {
-                            livePlayLog.expiration = worldLogEntry.time + 1000;
+                            livePlayLog.expiration = entry.getTime() + 1000;
                         }
                     });
         }
     }
 
-    public void tick(Consumer<EntryInfo> consumer) {
+    /**
+     * Reads new lines from the live play logs of the instance. Different instances may be ticked concurrently.
+     * <p>
+     * If a play log has a backlog of at least the backlog threshold when it is first read, the backlog is read on a
+     * background thread and handed back a few batches per tick, while lines written since are delivered as they are
+     * read. The caught up consumer is called once every line that was in the play log when it was first read has been
+     * delivered.
+     *
+     * @param consumer         receives batches of copied lines, or null if no listener needs copies
+     * @param bufferConsumer   receives each line without copying it, or null
+     * @param caughtUpConsumer receives the instance info and world path of play logs that have caught up, or null
+     */
+    public void tick(HermesInstance instance, Consumer<EntryBatch> consumer, BufferConsumer bufferConsumer, BiConsumer<JsonObject, Path> caughtUpConsumer) {
+        Map<Path, LivePlayLog> instanceLivePlayLogs = this.livePlayLogs.get(instance);
+        if (instanceLivePlayLogs == null) return;
         long currentTime = System.currentTimeMillis();
-        this.livePlayLogs.values().forEach(livePlayLog -> {
+        instanceLivePlayLogs.values().forEach(livePlayLog -> {
+            if (!livePlayLog.used) {
+                this.startBacklog(livePlayLog, consumer != null);
+            }
             livePlayLog.used = true;
-            try {
-                livePlayLog.logReader.read(entryInfo -> consumer.accept(new EntryInfo(livePlayLog.instanceInfo, livePlayLog.worldPath, entryInfo.entry)));
-            } catch (IOException e) {
-                Kerykeion.errorLogger.accept("Failed to read live play log", e);
-                livePlayLog.logReader.close();
-                this.livePlayLogs.remove(livePlayLog.worldPath);
-                return;
+            if (livePlayLog.backlog != null) {
+                this.deliverBacklog(livePlayLog, consumer, bufferConsumer);
             }
-            if (livePlayLog.hasExpired(currentTime)) {
-                livePlayLog.logReader.close();
+            boolean expired = livePlayLog.hasExpired(currentTime);
+            if (expired || this.fileWatcher.hasChanged(livePlayLog.logReader.getPath())) {
+                // Only batch listeners need copies, buffer listeners alone get through the read without allocating
+                Batcher<byte[]> batcher = consumer == null ? null : new Batcher<>((lines, offset) -> consumer.accept(new EntryBatch(livePlayLog.instanceInfo, livePlayLog.worldPath, lines, offset)));
+                long startPosition = livePlayLog.logReader.getPosition();
+                long[] lines = {0};
+                try {
+                    boolean changed = livePlayLog.logReader.read(entryInfo -> {
+                        if (bufferConsumer != null) {
+                            bufferConsumer.accept(livePlayLog.instanceInfo, livePlayLog.worldPath, entryInfo.offset, entryInfo.entry);
+                        }
+                        if (batcher != null) {
+                            batcher.add(entryInfo.getBytes(), entryInfo.offset);
+                        }
+                        lines[0]++;
+                    });
+                    if (batcher != null) batcher.flush();
+                    this.metrics.recordPlayLogRead(livePlayLog.stats, livePlayLog.logReader.getPath(), livePlayLog.logReader.getPosition() - startPosition, lines[0]);
+                    if (changed) this.fileWatcher.reportChange(livePlayLog.logReader.getPath());
+                    if (livePlayLog.backlog == null) {
+                        // Storing the offset while a backlog is pending would skip the rest of it after a restart
+                        this.offsetStore.update(livePlayLog.logReader.getPath(), livePlayLog.logReader.getPosition());
+                    }
+                } catch (IOException e) {
+                    if (batcher != null) batcher.flush();
+                    Kerykeion.errorLogger.accept("Failed to read live play log", e);
+                    this.closeLivePlayLog(livePlayLog);
+                }
+            }
+            if (!livePlayLog.caughtUp && !livePlayLog.closed && livePlayLog.backlog == null && livePlayLog.logReader.isNextReadNew()) {
+                livePlayLog.caughtUp = true;
+                if (caughtUpConsumer != null) {
+                    caughtUpConsumer.accept(livePlayLog.instanceInfo, livePlayLog.worldPath);
+                }
+            }
+            if (expired && livePlayLog.backlog == null) {
+                // Kept open past its expiration until the backlog has been delivered
+                this.closeLivePlayLog(livePlayLog);
             }
         });
-        this.livePlayLogs.values().removeIf(livePlayLog -> livePlayLog.hasExpired(currentTime));
+        instanceLivePlayLogs.values().removeIf(livePlayLog -> livePlayLog.closed);
+    }
+
+    /**
+     * Hands the backlog of the play log to the backlog reader if it is large enough. Called before the first read.
+     *
+     * @param copyLines whether a batch listener needs each line copied, rather than only buffer listeners reading them
+     */
+    private void startBacklog(LivePlayLog livePlayLog, boolean copyLines) {
+        if (this.backlogThreshold == Long.MAX_VALUE) return;
+        LogReader backlogReader;
+        try {
+            backlogReader = livePlayLog.logReader.splitBacklog(this.backlogThreshold);
+        } catch (IOException e) {
+            Kerykeion.errorLogger.accept("Failed to check live play log backlog", e);
+            return;
+        }
+        if (backlogReader == null) return;
+        livePlayLog.backlog = new Backlog(livePlayLog, backlogReader, copyLines);
+        this.pendingBacklogs.incrementAndGet();
+        this.getBacklogReader().execute(livePlayLog.backlog);
     }
 
-    static class EntryInfo {
+    /**
+     * @return the single low priority thread that reads every backlog, one after the other
+     */
+    private synchronized ExecutorService getBacklogReader() {
+        if (this.backlogReader == null) {
+            this.backlogReader = Executors.newSingleThreadExecutor(r -> {
+                Thread thread = new Thread(r, "Kerykeion Backlog Reader");
+                thread.setDaemon(true);
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+            });
+        }
+        return this.backlogReader;
+    }
+
+    /**
+     * Delivers some of the batches the backlog reader has read so far, and finishes the backlog once it has all been
+     * delivered.
+     */
+    private void deliverBacklog(LivePlayLog livePlayLog, Consumer<EntryBatch> consumer, BufferConsumer bufferConsumer) {
+        Backlog backlog = livePlayLog.backlog;
+        // Listeners can change while the backlog is read, so the reader is told which form the next batches should take
+        backlog.copyLines = consumer != null;
+        BacklogBatch batch;
+        for (int i = 0; i < BACKLOG_BATCHES_PER_TICK && (batch = backlog.batches.poll()) != null; i++) {
+            if (batch.lines != null) {
+                if (bufferConsumer != null) {
+                    long offset = batch.offset;
+                    for (byte[] line : batch.lines) {
+                        bufferConsumer.accept(livePlayLog.instanceInfo, livePlayLog.worldPath, offset, ByteBuffer.wrap(line).asReadOnlyBuffer());
+                        offset += line.length;
+                    }
+                }
+                if (consumer != null) {
+                    consumer.accept(new EntryBatch(livePlayLog.instanceInfo, livePlayLog.worldPath, batch.lines, batch.offset));
+                }
+                continue;
+            }
+            if (bufferConsumer != null) {
+                // One view of the chunk for all of its lines
+                ByteBuffer view = ByteBuffer.wrap(batch.chunk).asReadOnlyBuffer();
+                int lineStart = 0;
+                for (int j = 0; j < batch.lineCount; j++) {
+                    view.limit(batch.lineEnds[j]).position(lineStart);
+                    bufferConsumer.accept(livePlayLog.instanceInfo, livePlayLog.worldPath, batch.offset + lineStart, view);
+                    lineStart = batch.lineEnds[j];
+                }
+            }
+            if (consumer != null) {
+                // A batch listener was added after the chunk was read
+                List<byte[]> lines = new ArrayList<>(batch.lineCount);
+                int lineStart = 0;
+                for (int j = 0; j < batch.lineCount; j++) {
+                    lines.add(Arrays.copyOfRange(batch.chunk, lineStart, batch.lineEnds[j]));
+                    lineStart = batch.lineEnds[j];
+                }
+                consumer.accept(new EntryBatch(livePlayLog.instanceInfo, livePlayLog.worldPath, Collections.unmodifiableList(lines), batch.offset));
+            }
+        }
+        // Everything is queued before done is set, so the queue can only be empty afterward if it was all delivered
+        if (backlog.done && backlog.batches.isEmpty()) {
+            livePlayLog.backlog = null;
+            this.pendingBacklogs.decrementAndGet();
+        }
+    }
+
+    /**
+     * @return a view of the world paths of the live play logs open for the instance. Should only be used while ticking
+     * the instance.
+     */
+    public Set<Path> getOpenWorlds(HermesInstance instance) {
+        Map<Path, LivePlayLog> instanceLivePlayLogs = this.livePlayLogs.get(instance);
+        return instanceLivePlayLogs == null ? Collections.emptySet() : instanceLivePlayLogs.keySet();
+    }
+
+    /**
+     * Closes the live play logs of a closed instance. Should not be called while the instance is being ticked.
+     */
+    public void remove(HermesInstance instance) {
+        Map<Path, LivePlayLog> instanceLivePlayLogs = this.livePlayLogs.remove(instance);
+        if (instanceLivePlayLogs != null) {
+            instanceLivePlayLogs.values().forEach(this::closeLivePlayLog);
+        }
+    }
+
+    /**
+     * Stops reading backlogs. Should be called when the engine stops.
+     */
+    public synchronized void close() {
+        if (this.backlogReader != null) {
+            this.backlogReader.shutdownNow();
+        }
+    }
+
+    private void closeLivePlayLog(LivePlayLog livePlayLog) {
+        if (livePlayLog.closed) return;
+        livePlayLog.closed = true;
+        if (livePlayLog.backlog != null) {
+            livePlayLog.backlog.cancelled = true;
+            livePlayLog.backlog = null;
+            this.pendingBacklogs.decrementAndGet();
+        }
+        livePlayLog.logReader.close();
+        this.fileWatcher.unwatch(livePlayLog.logReader.getPath());
+        this.metrics.closeFile(livePlayLog.logReader.getPath());
+        this.metrics.openPlayLogs.decrementAndGet();
+    }
+
+    static class EntryBatch {
         final JsonObject instanceInfo;
         final Path worldPath;
-        final byte[] line;
+        final List<byte[]> lines;
+        final long offset;
 
-        public EntryInfo(JsonObject instanceInfo, Path worldPath, byte[] line) {
+        public EntryBatch(JsonObject instanceInfo, Path worldPath, List<byte[]> lines, long offset) {
             this.instanceInfo = instanceInfo;
             this.worldPath = worldPath;
-            this.line = line;
+            this.lines = lines;
+            this.offset = offset;
         }
     }
 
+    interface BufferConsumer {
+        /**
+         * @param line a read-only view of the line, only valid until this returns
+         */
+        void accept(JsonObject instanceInfo, Path worldPath, long offset, ByteBuffer line);
+    }
+
     private static class LivePlayLog {
         private final JsonObject instanceInfo;
         private final Path worldPath;
         private final LogReader logReader;
+        private final KerykeionMetrics.FileReadStats stats;
         private long expiration = -1;
         private boolean used = false;
+        private boolean closed = false;
+        private boolean caughtUp = false;
+        private Backlog backlog = null; // The lines before the ones logReader reads, while they are being replayed
 
-        public LivePlayLog(JsonObject instanceInfo, Path worldPath, Path path) {
+        public LivePlayLog(JsonObject instanceInfo, Path worldPath, LogReader logReader, KerykeionMetrics.FileReadStats stats) {
             this.instanceInfo = instanceInfo;
             this.worldPath = worldPath;
-            this.logReader = new LogReader(path);
+            this.logReader = logReader;
+            this.stats = stats;
         }
 
         public boolean hasExpired(long currentTime) {
@@ -111,16 +361,121 @@ class LivePlayLogTracker implements HermesWorldLogListener {
         }
     }
 
-    private static class WorldLogEntry {
-        @SerializedName("world")
-        public final JsonObject worldPath;
-        public final String type;
-        public final long time;
+    /**
+     * Lines read by the backlog reader, either copied one by one for batch listeners, or copied together into one chunk
+     * that buffer listeners read through a view.
+     */
+    private static class BacklogBatch {
+        private final long offset;
+        private final List<byte[]> lines; // Null for a chunk
+        private final byte[] chunk;
+        private final int[] lineEnds; // Where each line of the chunk ends
+        private final int lineCount;
 
-        public WorldLogEntry(JsonObject worldPath, String type, long time) {
-            this.worldPath = worldPath;
-            this.type = type;
-            this.time = time;
+        private BacklogBatch(long offset, List<byte[]> lines, byte[] chunk, int[] lineEnds, int lineCount) {
+            this.offset = offset;
+            this.lines = lines;
+            this.chunk = chunk;
+            this.lineEnds = lineEnds;
+            this.lineCount = lineCount;
+        }
+    }
+
+    /**
+     * Reads a play log's backlog on the backlog reader thread into a bounded queue, which the ticking thread delivers
+     * from, so listeners are still only called by the ticking thread.
+     */
+    private class Backlog implements Runnable {
+        private final LivePlayLog livePlayLog;
+        private final LogReader logReader;
+        private final BlockingQueue<BacklogBatch> batches = new ArrayBlockingQueue<>(BACKLOG_QUEUE_SIZE);
+        private volatile boolean done = false;
+        private volatile boolean cancelled = false;
+        private volatile boolean copyLines; // Whether a batch listener needs each line copied
+        // The chunk being filled while only buffer listeners are registered
+        private byte[] chunk = new byte[8192];
+        private int[] chunkLineEnds = new int[BACKLOG_CHUNK_LINES];
+        private int chunkSize = 0;
+        private int chunkLines = 0;
+        private long chunkOffset = -1;
+
+        private Backlog(LivePlayLog livePlayLog, LogReader logReader, boolean copyLines) {
+            this.livePlayLog = livePlayLog;
+            this.logReader = logReader;
+            this.copyLines = copyLines;
+        }
+
+        @Override
+        public void run() {
+            Batcher<byte[]> batcher = new Batcher<>((lines, offset) -> this.put(new BacklogBatch(offset, lines, null, null, 0)));
+            long startPosition = this.logReader.getPosition();
+            long[] lines = {0};
+            try {
+                if (this.cancelled) return;
+                this.logReader.read(entryInfo -> {
+                    // Whichever form isn't used anymore is flushed first to keep the lines in order
+                    if (this.copyLines) {
+                        this.flushChunk();
+                        batcher.add(entryInfo.getBytes(), entryInfo.offset);
+                    } else {
+                        batcher.flush();
+                        this.addToChunk(entryInfo);
+                    }
+                    lines[0]++;
+                });
+                batcher.flush();
+                this.flushChunk();
+                LivePlayLogTracker.this.metrics.recordPlayLogRead(this.livePlayLog.stats, this.logReader.getPath(), this.logReader.getPosition() - startPosition, lines[0]);
+            } catch (IOException e) {
+                Kerykeion.errorLogger.accept("Failed to read live play log backlog", e);
+            } catch (CancellationException ignored) {
+            } finally {
+                this.logReader.close();
+                this.done = true;
+            }
+        }
+
+        private void addToChunk(LogReader.EntryInfo entryInfo) {
+            int length = entryInfo.entry.remaining();
+            if (this.chunkLines == 0) this.chunkOffset = entryInfo.offset;
+            if (this.chunkSize + length > this.chunk.length) {
+                this.chunk = Arrays.copyOf(this.chunk, Math.max(this.chunk.length * 2, this.chunkSize + length));
+            }
+            int position = entryInfo.entry.position();
+            entryInfo.entry.get(this.chunk, this.chunkSize, length);
+            entryInfo.entry.position(position);
+            this.chunkSize += length;
+            this.chunkLineEnds[this.chunkLines++] = this.chunkSize;
+            if (this.chunkLines == BACKLOG_CHUNK_LINES) {
+                this.flushChunk();
+            }
+        }
+
+        /**
+         * Queues the chunk being filled, if it has any lines, and starts a new one of the same capacity.
+         */
+        private void flushChunk() {
+            if (this.chunkLines == 0) return;
+            BacklogBatch batch = new BacklogBatch(this.chunkOffset, null, this.chunk, this.chunkLineEnds, this.chunkLines);
+            this.chunk = new byte[this.chunk.length];
+            this.chunkLineEnds = new int[BACKLOG_CHUNK_LINES];
+            this.chunkSize = 0;
+            this.chunkLines = 0;
+            this.put(batch);
+        }
+
+        /**
+         * Queues a batch, waiting while the queue is full unless the backlog is cancelled.
+         */
+        private void put(BacklogBatch batch) {
+            try {
+                while (!this.batches.offer(batch, 100, TimeUnit.MILLISECONDS)) {
+                    if (this.cancelled) throw new CancellationException();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new CancellationException();
+            }
         }
     }
 }
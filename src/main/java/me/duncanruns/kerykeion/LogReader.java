@@ -1,74 +1,219 @@
 package me.duncanruns.kerykeion;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.function.Consumer;
 
 class LogReader {
+    private static final int BUFFER_SIZE = 16384;
+    private static final long MAX_MAPPING_SIZE = 64 * 1024 * 1024;
+
     private final Path path;
-    private RandomAccessFile file = null;
+    private final long memoryMapThreshold;
+    private FileChannel channel = null;
+    private long position = 0; // Start of the first line that hasn't been delivered yet
+    private long end = Long.MAX_VALUE; // Nothing at or after this offset is read
+    private long lastSize = -1;
     private boolean firstRead = true;
-    private final ByteArrayOutputStream lineBuffer = new ByteArrayOutputStream(128);
+    private ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+    private final EntryInfo entryInfo = new EntryInfo(); // Reused for every line so that reading doesn't allocate per line
 
     public LogReader(Path path) {
+        this(path, Long.MAX_VALUE);
+    }
+
+    /**
+     * @param memoryMapThreshold when at least this many unread bytes are available, they are memory mapped instead of
+     *                           being read through the buffer
+     */
+    public LogReader(Path path, long memoryMapThreshold) {
         this.path = path;
+        this.memoryMapThreshold = memoryMapThreshold;
     }
 
-    public void read(Consumer<EntryInfo> consumer) throws IOException {
+    /**
+     * @return true if the file has changed size since the last read
+     */
+    public boolean read(Consumer<EntryInfo> consumer) throws IOException {
         boolean firstRead = this.firstRead;
         this.firstRead = false;
-        if (!Files.exists(this.path)) return;
-        if (this.file == null) {
-            this.file = new RandomAccessFile(this.path.toFile(), "r");
+        if (!Files.exists(this.path)) return false;
+        if (this.channel == null) {
+            this.channel = FileChannel.open(this.path, StandardOpenOption.READ);
+        }
+        long size = Math.min(this.channel.size(), this.end);
+        boolean changed = size != this.lastSize;
+        this.lastSize = size;
+        while (size - this.position >= this.memoryMapThreshold) {
+            if (!this.readMapped(consumer, !firstRead, size)) break;
         }
-        long progress;
-        while ((progress = this.file.getFilePointer()) < this.file.length()) {
-            byte[] line = this.readLine();
-            if (line.length == 0 || line[line.length - 1] != '\n') {
-                // Line hasn't finished writing yet or no bytes were read
-                this.file.seek(progress);
-                break;
+        long readPosition = this.position;
+        this.buffer.clear();
+        while (readPosition < size) {
+            // Don't read past the size, which may be before the end of the file when an end is set
+            this.buffer.limit((int) Math.min(this.buffer.capacity(), this.buffer.position() + size - readPosition));
+            int read = this.channel.read(this.buffer, readPosition);
+            if (read <= 0) break;
+            readPosition += read;
+            this.buffer.flip();
+            this.buffer.position(this.deliverLines(this.buffer, consumer, !firstRead));
+            this.buffer.compact();
+            if (!this.buffer.hasRemaining()) {
+                // A single line is larger than the buffer
+                this.buffer = ByteBuffer.allocate(this.buffer.capacity() * 2).put(this.buffer.array(), 0, this.buffer.position());
             }
-            consumer.accept(new EntryInfo(line, !firstRead));
         }
+        // Anything left in the buffer is a line that hasn't finished writing yet, it will be read again next time
+        return changed;
     }
 
-    private byte[] readLine() throws IOException {
-        try {
-            int c;
-            do {
-                c = this.file.read();
-                if (c == -1) break;
-                this.lineBuffer.write(c);
-            } while (c != '\n');
-            return this.lineBuffer.toByteArray();
-        } finally {
-            this.lineBuffer.reset();
+    /**
+     * Maps the unread part of the file (up to {@link LogReader#MAX_MAPPING_SIZE}) and delivers the complete lines in
+     * it.
+     *
+     * @return true if any lines were delivered
+     */
+    private boolean readMapped(Consumer<EntryInfo> consumer, boolean isNew, long size) throws IOException {
+        long start = this.position;
+        MappedByteBuffer mapped = this.channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(size - start, MAX_MAPPING_SIZE));
+        this.deliverLines(mapped, consumer, isNew);
+        return this.position != start;
+    }
+
+    /**
+     * Delivers every complete line between the buffer's position and limit as a read-only view of the buffer.
+     *
+     * @return the index of the start of the unfinished line, or the limit if there is none
+     */
+    private int deliverLines(ByteBuffer buffer, Consumer<EntryInfo> consumer, boolean isNew) {
+        ByteBuffer view = buffer.asReadOnlyBuffer();
+        int limit = buffer.limit();
+        int lineStart = buffer.position();
+        for (int i = lineStart; i < limit; i++) {
+            if (buffer.get(i) != '\n') continue;
+            view.limit(i + 1);
+            view.position(lineStart);
+            this.entryInfo.entry = view;
+            this.entryInfo.offset = this.position;
+            this.entryInfo.isNew = isNew;
+            this.position += i + 1 - lineStart;
+            lineStart = i + 1;
+            consumer.accept(this.entryInfo);
+        }
+        return lineStart;
+    }
+
+    /**
+     * @return whether the entries of the next read will be new, which is the case for every read but the first
+     */
+    public boolean isNextReadNew() {
+        return !this.firstRead;
+    }
+
+    /**
+     * Splits off the unread lines that are already complete, if there are at least the given number of unread bytes, so
+     * they can be read by the returned reader (e.g. on another thread) while this reader continues after them. Should
+     * only be called before the first read. The returned reader stops at the end of those lines.
+     *
+     * @return a reader for the backlog, or null if the file doesn't exist or the backlog is too small
+     */
+    public LogReader splitBacklog(long threshold) throws IOException {
+        if (!Files.exists(this.path)) return null;
+        if (this.channel == null) {
+            this.channel = FileChannel.open(this.path, StandardOpenOption.READ);
         }
+        long size = this.channel.size();
+        if (size - this.position < threshold) return null;
+        long backlogEnd = this.findLineStart(size);
+        if (backlogEnd <= this.position) return null;
+        LogReader backlog = new LogReader(this.path, this.memoryMapThreshold);
+        backlog.position = this.position;
+        backlog.setEnd(backlogEnd);
+        this.position = backlogEnd;
+        return backlog;
+    }
+
+    /**
+     * @return the offset just after the last newline before the given offset, or the current position if there is none
+     */
+    private long findLineStart(long offset) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        long chunkEnd = offset;
+        while (chunkEnd > this.position) {
+            long chunkStart = Math.max(this.position, chunkEnd - BUFFER_SIZE);
+            buffer.clear().limit((int) (chunkEnd - chunkStart));
+            while (buffer.hasRemaining()) {
+                if (this.channel.read(buffer, chunkStart + buffer.position()) <= 0) return this.position;
+            }
+            for (int i = buffer.limit() - 1; i >= 0; i--) {
+                if (buffer.get(i) == '\n') return chunkStart + i + 1;
+            }
+            chunkEnd = chunkStart;
+        }
+        return this.position;
+    }
+
+    /**
+     * Stops reading at the given offset, which should be the start of a line. Should only be called before the first
+     * read.
+     */
+    public void setEnd(long end) {
+        this.end = end;
+    }
+
+    /**
+     * Skips ahead so that reading starts at the given offset. Should only be called before the first read, and only
+     * with the offset of the start of a line.
+     */
+    public void skipTo(long offset) {
+        this.position = offset;
+    }
+
+    /**
+     * @return the offset of the first byte that has not been delivered yet
+     */
+    public long getPosition() {
+        return this.position;
+    }
+
+    public Path getPath() {
+        return this.path;
     }
 
     public void close() {
         try {
-            if (this.file != null) {
-                this.file.close();
+            if (this.channel != null) {
+                this.channel.close();
             }
         } catch (IOException e) {
             Kerykeion.errorLogger.accept("Failed to close log file", e);
         } finally {
-            this.file = null;
+            this.channel = null;
         }
     }
 
+    /**
+     * The line being delivered. The same object is reused for every line, so it is only valid until the consumer
+     * returns.
+     */
     static class EntryInfo {
-        final byte[] entry;
-        final boolean isNew;
+        /**
+         * A read-only view of the line including the trailing newline, between its position and limit. Use
+         * {@link EntryInfo#getBytes()} to keep it.
+         */
+        ByteBuffer entry;
+        long offset;
+        boolean isNew;
 
-        public EntryInfo(byte[] entry, boolean isNew) {
-            this.entry = entry;
-            this.isNew = isNew;
+        byte[] getBytes() {
+            byte[] bytes = new byte[this.entry.remaining()];
+            this.entry.duplicate().get(bytes);
+            return bytes;
         }
     }
 }
@@ -0,0 +1,157 @@
+package me.duncanruns.kerykeion;
+
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.reflect.TypeToken;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.zip.CRC32;
+
+/**
+ * Persists how far each log has been read so that a restart can resume reading instead of replaying the whole log.
+ * <p>
+ * A checkpoint is only used if the file still looks like the same file: same file key (inode) when the platform has
+ * one, not shorter than the checkpoint, not older than the checkpoint, and starting with the same bytes. Otherwise the
+ * log is read from the start.
+ * <p>
+ * Disabled unless a store path is set.
+ */
+class OffsetStore {
+    private static final int HEAD_SIZE = 256;
+    private static final long SAVE_INTERVAL = 5000;
+
+    private Path storePath = null;
+    private Map<String, Checkpoint> checkpoints = new HashMap<>();
+    private boolean dirty = false;
+    private long lastSave = 0;
+
+    void enable(Path storePath) {
+        this.storePath = storePath;
+    }
+
+    boolean isEnabled() {
+        return this.storePath != null;
+    }
+
+    synchronized void load() {
+        if (!this.isEnabled() || !Files.exists(this.storePath)) return;
+        try {
+            Map<String, Checkpoint> loaded = Kerykeion.GSON.fromJson(
+                    new String(Files.readAllBytes(this.storePath), StandardCharsets.UTF_8),
+                    new TypeToken<Map<String, Checkpoint>>() {
+                    }.getType()
+            );
+            if (loaded == null) return;
+            // Forget about logs that no longer exist so that the store doesn't grow forever
+            loaded.keySet().removeIf(path -> !Files.exists(Paths.get(path)));
+            this.checkpoints = loaded;
+        } catch (IOException | JsonSyntaxException | InvalidPathException e) {
+            Kerykeion.errorLogger.accept("Failed to load read offsets, logs will be read from the start", e);
+        }
+    }
+
+    /**
+     * @return the offset to resume reading the file from, or 0 if it should be read from the start
+     */
+    synchronized long getResumeOffset(Path file) {
+        if (!this.isEnabled()) return 0;
+        Checkpoint checkpoint = this.checkpoints.get(file.toString());
+        if (checkpoint == null) return 0;
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+            String fileKey = Objects.toString(attributes.fileKey(), null);
+            boolean sameFile = (fileKey == null || checkpoint.fileKey == null || fileKey.equals(checkpoint.fileKey))
+                    && attributes.size() >= checkpoint.offset
+                    && attributes.lastModifiedTime().toMillis() >= checkpoint.lastModified
+                    && hashHead(file, checkpoint.headLength) == checkpoint.headHash;
+            return sameFile ? checkpoint.offset : 0;
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Records that everything before the offset has been delivered.
+     */
+    synchronized void update(Path file, long offset) {
+        if (!this.isEnabled()) return;
+        String key = file.toString();
+        Checkpoint old = this.checkpoints.get(key);
+        if (old != null && old.offset == offset) return;
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+            int headLength = (int) Math.min(HEAD_SIZE, offset);
+            long headHash = old != null && old.headLength == headLength ? old.headHash : hashHead(file, headLength);
+            this.checkpoints.put(key, new Checkpoint(
+                    offset,
+                    Objects.toString(attributes.fileKey(), null),
+                    attributes.lastModifiedTime().toMillis(),
+                    headLength,
+                    headHash
+            ));
+            this.dirty = true;
+        } catch (IOException e) {
+            Kerykeion.errorLogger.accept("Failed to update read offset", e);
+        }
+    }
+
+    /**
+     * Saves the checkpoints if they have changed and have not been saved recently.
+     */
+    synchronized void saveIfDue(long currentTime) {
+        if (Math.abs(currentTime - this.lastSave) < SAVE_INTERVAL) return;
+        this.save();
+        this.lastSave = currentTime;
+    }
+
+    synchronized void save() {
+        if (!this.isEnabled() || !this.dirty) return;
+        try {
+            Path tempPath = this.storePath.resolveSibling(this.storePath.getFileName() + ".tmp");
+            Files.write(tempPath, Kerykeion.GSON.toJson(this.checkpoints).getBytes(StandardCharsets.UTF_8));
+            try {
+                Files.move(tempPath, this.storePath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tempPath, this.storePath, StandardCopyOption.REPLACE_EXISTING);
+            }
+            this.dirty = false;
+        } catch (IOException e) {
+            Kerykeion.errorLogger.accept("Failed to save read offsets", e);
+        }
+    }
+
+    private static long hashHead(Path file, int length) throws IOException {
+        ByteBuffer head = ByteBuffer.allocate(length);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            while (head.hasRemaining()) {
+                if (channel.read(head, head.position()) <= 0) break;
+            }
+        }
+        CRC32 crc = new CRC32();
+        crc.update(head.array(), 0, head.position());
+        return crc.getValue();
+    }
+
+    private static class Checkpoint {
+        private final long offset;
+        private final String fileKey;
+        private final long lastModified;
+        private final int headLength;
+        private final long headHash;
+
+        private Checkpoint(long offset, String fileKey, long lastModified, int headLength, long headHash) {
+            this.offset = offset;
+            this.fileKey = fileKey;
+            this.lastModified = lastModified;
+            this.headLength = headLength;
+            this.headHash = headHash;
+        }
+    }
+}
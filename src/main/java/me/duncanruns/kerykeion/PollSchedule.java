@@ -0,0 +1,29 @@
+package me.duncanruns.kerykeion;
+
+/**
+ * Decides when a polled file should next be read. Every poll that doesn't find a change doubles the interval up to
+ * the maximum, and any change resets it so the file is polled every tick again.
+ */
+class PollSchedule {
+    private long interval = 0;
+    private long nextPoll = 0;
+
+    /**
+     * Checks if the file is due, and if so, backs off as if the poll won't find a change.
+     */
+    boolean poll(long currentTime, long minInterval, long maxInterval) {
+        if (currentTime < this.nextPoll) return false;
+        this.interval = Math.min(Math.max(this.interval * 2, minInterval), maxInterval);
+        this.nextPoll = currentTime + this.interval;
+        return true;
+    }
+
+    void reset(long currentTime) {
+        this.interval = 0;
+        this.nextPoll = currentTime;
+    }
+
+    long getNextPoll() {
+        return this.nextPoll;
+    }
+}
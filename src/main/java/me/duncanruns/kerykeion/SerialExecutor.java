@@ -0,0 +1,50 @@
+package me.duncanruns.kerykeion;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Runs tasks one at a time in the order they were submitted, on a thread that is only started while there are tasks.
+ * With a virtual thread factory this makes a cheap lane for a single listener, which can block without holding up
+ * event delivery or other listeners.
+ * <p>
+ * The queue is unbounded, a {@link BoundedDispatcher} should be used when a listener may fall far behind.
+ */
+class SerialExecutor implements Executor {
+    private final ThreadFactory threadFactory;
+    private final ArrayDeque<Runnable> tasks = new ArrayDeque<>();
+    private boolean running = false;
+
+    SerialExecutor(ThreadFactory threadFactory) {
+        this.threadFactory = threadFactory;
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        synchronized (this) {
+            this.tasks.add(task);
+            if (this.running) return;
+            this.running = true;
+        }
+        this.threadFactory.newThread(this::run).start();
+    }
+
+    private void run() {
+        while (true) {
+            Runnable task;
+            synchronized (this) {
+                task = this.tasks.poll();
+                if (task == null) {
+                    this.running = false;
+                    return;
+                }
+            }
+            try {
+                task.run();
+            } catch (Throwable t) {
+                Kerykeion.errorLogger.accept("Error in listener", t);
+            }
+        }
+    }
+}
@@ -1,45 +1,105 @@
 package me.duncanruns.kerykeion;
 
+import com.google.gson.JsonElement;
+import com.google.gson.JsonNull;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonSyntaxException;
 
 import java.io.IOException;
-import java.util.*;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
 
 class StateTracker {
-    private static final Map<HermesInstance, UpdatingJsonFileReader> stateLogs = new HashMap<>();
-
-    public TickResult tick(Collection<HermesInstance> instances) {
-        TickResult tickResult = new TickResult();
-        stateLogs.keySet().removeIf(i -> !instances.contains(i));
-        for (HermesInstance instance : instances) {
-            UpdatingJsonFileReader reader = stateLogs.computeIfAbsent(instance, i -> new UpdatingJsonFileReader(i.getGameDir().resolve("hermes").resolve("state.json")));
-            try {
-                reader.read().ifPresent(
-                        json -> tickResult.entries.add(new TickResult.EntryWithInstance(json, instance))
-                );
-            } catch (IOException | JsonSyntaxException e) {
-                Kerykeion.errorLogger.accept("Failed to read state log", e);
-            }
+    private final Map<HermesInstance, UpdatingJsonFileReader> stateLogs = new ConcurrentHashMap<>();
+    private final FileWatcher fileWatcher;
+    private final KerykeionMetrics metrics;
+
+    public StateTracker(FileWatcher fileWatcher, KerykeionMetrics metrics) {
+        this.fileWatcher = fileWatcher;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Reads the state of the instance if it has changed. Different instances may be ticked concurrently.
+     */
+    public void tick(HermesInstance instance, Consumer<StateChange> consumer) {
+        UpdatingJsonFileReader reader = this.stateLogs.computeIfAbsent(instance, this::openStateFile);
+        if (!this.fileWatcher.hasChanged(reader.getPath())) return;
+        JsonObject previous = reader.getStoredJson();
+        try {
+            reader.read().ifPresent(state -> {
+                JsonObject changes = diff(previous, state);
+                // Rewrites of the same state are not changes
+                if (changes.size() > 0) {
+                    consumer.accept(new StateChange(state, changes));
+                    this.metrics.recordReadLatency(reader.getLastModified());
+                }
+            });
+        } catch (IOException | JsonSyntaxException e) {
+            Kerykeion.errorLogger.accept("Failed to read state log", e);
+        }
+        if (reader.hasFailed()) {
+            this.metrics.stateParseFailures.increment();
+        }
+        if (reader.wasModified()) {
+            this.fileWatcher.reportChange(reader.getPath());
         }
-        return tickResult;
     }
 
-    static class TickResult {
-        final List<EntryWithInstance> entries;
+    /**
+     * @return the last state that was read from the instance, or null if none has been read yet. Should only be called
+     * while ticking the instance.
+     */
+    public JsonObject getState(HermesInstance instance) {
+        UpdatingJsonFileReader reader = this.stateLogs.get(instance);
+        return reader == null ? null : reader.getStoredJson();
+    }
 
-        public TickResult() {
-            this.entries = new ArrayList<>();
+    /**
+     * @return the top-level keys that differ between the states, with their new value or json null if they were removed
+     */
+    static JsonObject diff(JsonObject previous, JsonObject state) {
+        JsonObject changes = new JsonObject();
+        for (Map.Entry<String, JsonElement> entry : state.entrySet()) {
+            if (previous == null || !entry.getValue().equals(previous.get(entry.getKey()))) {
+                changes.add(entry.getKey(), entry.getValue());
+            }
         }
+        if (previous != null) {
+            for (String key : previous.keySet()) {
+                if (!state.has(key)) {
+                    changes.add(key, JsonNull.INSTANCE);
+                }
+            }
+        }
+        return changes;
+    }
+
+    /**
+     * Stops tracking a closed instance. Should not be called while the instance is being ticked.
+     */
+    public void remove(HermesInstance instance) {
+        UpdatingJsonFileReader reader = this.stateLogs.remove(instance);
+        if (reader != null) {
+            this.fileWatcher.unwatch(reader.getPath());
+        }
+    }
+
+    private UpdatingJsonFileReader openStateFile(HermesInstance instance) {
+        Path path = instance.getGameDir().resolve("hermes").resolve("state.json");
+        this.fileWatcher.watch(path);
+        return new UpdatingJsonFileReader(path);
+    }
 
-        static class EntryWithInstance {
-            final JsonObject entry;
-            final HermesInstance instance;
+    static class StateChange {
+        final JsonObject state;
+        final JsonObject changes;
 
-            public EntryWithInstance(JsonObject entry, HermesInstance instance) {
-                this.entry = entry;
-                this.instance = instance;
-            }
+        public StateChange(JsonObject state, JsonObject changes) {
+            this.state = state;
+            this.changes = changes;
         }
     }
 }
@@ -3,36 +3,41 @@ package me.duncanruns.kerykeion;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonSyntaxException;
 
-import java.io.EOFException;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.Optional;
 
 class UpdatingJsonFileReader {
-    private final Path path;
-    private long lastModified = 0;
+    private final FileContentReader contentReader;
     private int failures = 0;
     private JsonObject json = null;
+    private boolean modified = false;
+    private boolean failed = false;
 
     public UpdatingJsonFileReader(Path path) {
-        this.path = path;
+        this.contentReader = new FileContentReader(path);
     }
 
     /**
-     * Reads the file if it has been modified since the last read.
+     * Reads the file if its contents have changed since the last read.
      *
      * @return The json if it has been modified, empty otherwise.
      * @throws IOException         if the file cannot be read for any reason other than it not existing
      * @throws JsonSyntaxException if the json is invalid more than 10 times in a row.
      */
     public Optional<JsonObject> read() throws IOException, JsonSyntaxException {
-        if (!Files.exists(this.path)) return Optional.empty();
-        long mTime = Files.getLastModifiedTime(this.path).toMillis();
-        if (this.lastModified == mTime) return Optional.empty();
+        this.modified = false;
+        this.failed = false;
+        if (!Files.exists(this.contentReader.getPath())) return Optional.empty();
+        if (!this.contentReader.update()) return Optional.empty();
+        this.modified = true;
+        JsonObject json;
         try {
-            this.json = Kerykeion.GSON.fromJson(new String(Files.readAllBytes(this.path)), JsonObject.class);
-        } catch (JsonSyntaxException | EOFException e) {
+            json = Kerykeion.GSON.fromJson(this.contentReader.getReader(), JsonObject.class);
+        } catch (JsonSyntaxException e) {
+            this.contentReader.invalidate();
+            this.failed = true;
             this.failures++;
             if (this.failures > 10) { // Extremely unlikely that 10 reads in a row happen in the middle of a write (please do not punish me murphy)
                 this.failures = 0;
@@ -40,11 +45,44 @@ class UpdatingJsonFileReader {
             }
             return Optional.empty();
         }
-        if(this.json == null) return Optional.empty(); // Invalid json, force a re-read next time
-        this.lastModified = mTime;
+        if (json == null) { // Invalid json, force a re-read next time
+            this.contentReader.invalidate();
+            this.failed = true;
+            return Optional.empty();
+        }
+        this.failures = 0;
+        this.json = json;
         return Optional.of(this.json);
     }
 
+    /**
+     * @return true if the last read found the file modified, even if it couldn't be parsed
+     */
+    public boolean wasModified() {
+        return this.modified;
+    }
+
+    /**
+     * @return true if the last read found the file modified but couldn't parse it
+     */
+    public boolean hasFailed() {
+        return this.failed;
+    }
+
+    /**
+     * @return the modification time of the file when it was last read
+     */
+    public long getLastModified() {
+        return this.contentReader.getLastModified();
+    }
+
+    public Path getPath() {
+        return this.contentReader.getPath();
+    }
+
+    /**
+     * @return the last successfully read json, or null if the file has not been read yet
+     */
     public JsonObject getStoredJson() {
         return this.json;
     }
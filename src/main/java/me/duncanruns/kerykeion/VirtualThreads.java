@@ -0,0 +1,38 @@
+package me.duncanruns.kerykeion;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Looks up virtual threads (Java 21+) through reflection, so that Kerykeion can use them while still running on Java 8.
+ */
+final class VirtualThreads {
+    private static final ThreadFactory factory = createFactory();
+
+    private VirtualThreads() {
+    }
+
+    private static ThreadFactory createFactory() {
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, "Kerykeion Listener ", 1L);
+            Method factoryMethod = builderClass.getMethod("factory");
+            return (ThreadFactory) factoryMethod.invoke(builder);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // Not available (before Java 21, or a preview that isn't enabled)
+            return null;
+        }
+    }
+
+    static boolean isSupported() {
+        return factory != null;
+    }
+
+    /**
+     * @return a factory for virtual threads, or null if they are not supported
+     */
+    static ThreadFactory getFactory() {
+        return factory;
+    }
+}
@@ -0,0 +1,348 @@
+package me.duncanruns.kerykeion;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonSyntaxException;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * A single world log entry, e.g.
+ * {@code {"world":{"relative":true,"path":"saves/New World"},"type":"entering","time":1763434215136}}.
+ * <p>
+ * The type, time and world path are scanned directly from the line, the full json tree is only built if
+ * {@link WorldLogEntry#getJson()} is called.
+ */
+@SuppressWarnings("unused")
+public final class WorldLogEntry {
+    private final byte[] raw;
+    private final String type;
+    private final long time;
+    private final Boolean worldRelative;
+    private final String worldPath;
+    private final long offset;
+    private JsonObject json;
+
+    private WorldLogEntry(byte[] raw, long offset, String type, long time, Boolean worldRelative, String worldPath, JsonObject json) {
+        this.raw = raw;
+        this.offset = offset;
+        this.type = type;
+        this.time = time;
+        this.worldRelative = worldRelative;
+        this.worldPath = worldPath;
+        this.json = json;
+    }
+
+    /**
+     * @param raw The bytes of a single line, without the trailing newline
+     * @throws JsonSyntaxException if the line is not a json object
+     */
+    static WorldLogEntry parse(byte[] raw) throws JsonSyntaxException {
+        return parse(raw, -1);
+    }
+
+    /**
+     * @param raw    The bytes of a single line, without the trailing newline
+     * @param offset The offset of the line in the world log
+     * @throws JsonSyntaxException if the line is not a json object
+     */
+    static WorldLogEntry parse(byte[] raw, long offset) throws JsonSyntaxException {
+        Scanner scanner = new Scanner(raw);
+        try {
+            scanner.scanEntry();
+            return new WorldLogEntry(raw, offset, scanner.type, scanner.time, scanner.worldRelative, scanner.worldPath, null);
+        } catch (IllegalStateException | IndexOutOfBoundsException | NumberFormatException e) {
+            // Not something the scanner understands, let Gson have a go at it
+            JsonObject json = Kerykeion.GSON.fromJson(new String(raw, StandardCharsets.UTF_8), JsonObject.class);
+            if (json == null) throw new JsonSyntaxException("Empty world log entry");
+            try {
+                JsonElement world = json.get("world");
+                JsonObject worldObj = world != null && world.isJsonObject() ? world.getAsJsonObject() : new JsonObject();
+                JsonElement time = getPrimitive(json, "time");
+                JsonElement relative = getPrimitive(worldObj, "relative");
+                JsonElement path = getPrimitive(worldObj, "path");
+                return new WorldLogEntry(
+                        raw,
+                        offset,
+                        getPrimitive(json, "type") == null ? null : json.get("type").getAsString(),
+                        time == null ? -1 : time.getAsLong(),
+                        relative == null ? null : relative.getAsBoolean(),
+                        path == null ? null : path.getAsString(),
+                        json
+                );
+            } catch (NumberFormatException ex) {
+                throw new JsonSyntaxException("Invalid world log entry", ex);
+            }
+        }
+    }
+
+    private static JsonElement getPrimitive(JsonObject object, String key) {
+        JsonElement element = object.get(key);
+        return element != null && element.isJsonPrimitive() ? element : null;
+    }
+
+    /**
+     * @return The type of the entry, such as "entering" or "leave", or null if there is none
+     */
+    public String getType() {
+        return this.type;
+    }
+
+    /**
+     * @return The time of the entry in milliseconds since the epoch, or -1 if there is none
+     */
+    public long getTime() {
+        return this.time;
+    }
+
+    /**
+     * @return The offset of the entry in the world log, or -1 if it is not known
+     */
+    public long getOffset() {
+        return this.offset;
+    }
+
+    /**
+     * @return The world path as written in the entry, or null if there is none
+     */
+    public String getWorldPathString() {
+        return this.worldPath;
+    }
+
+    /**
+     * @return Whether the world path is relative to the game directory, or null if there is no world path
+     */
+    public Boolean isWorldPathRelative() {
+        return this.worldRelative;
+    }
+
+    /**
+     * @param gameDir The game directory of the instance this entry is from
+     * @return The world path, or null if there is none
+     * @throws java.nio.file.InvalidPathException if the world path is invalid
+     */
+    public Path resolveWorldPath(Path gameDir) {
+        if (this.worldPath == null) return null;
+        return Boolean.FALSE.equals(this.worldRelative) ? Paths.get(this.worldPath) : gameDir.resolve(this.worldPath);
+    }
+
+    /**
+     * @return A read-only view of the bytes of the entry, without the trailing newline
+     */
+    public ByteBuffer getRaw() {
+        return ByteBuffer.wrap(this.raw).asReadOnlyBuffer();
+    }
+
+    /**
+     * Parses the full entry the first time it is called. The same object is returned to every caller, so it should not
+     * be modified.
+     *
+     * @return The entry as a json object
+     */
+    public synchronized JsonObject getJson() {
+        if (this.json == null) {
+            this.json = Kerykeion.GSON.fromJson(new String(this.raw, StandardCharsets.UTF_8), JsonObject.class);
+        }
+        return this.json;
+    }
+
+    @Override
+    public String toString() {
+        return new String(this.raw, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Minimal json scanner that only picks out the fields Kerykeion needs and skips over everything else. Throws
+     * {@link IllegalStateException} or {@link IndexOutOfBoundsException} on anything unexpected.
+     */
+    private static class Scanner {
+        private final byte[] bytes;
+        private int i = 0;
+
+        private String type = null;
+        private long time = -1;
+        private Boolean worldRelative = null;
+        private String worldPath = null;
+
+        private Scanner(byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        private void scanEntry() {
+            this.scanObject(key -> {
+                switch (key) {
+                    case "type":
+                        this.type = this.readString();
+                        break;
+                    case "time":
+                        this.time = this.readLong();
+                        break;
+                    case "world":
+                        this.scanObject(worldKey -> {
+                            if (worldKey.equals("relative")) this.worldRelative = this.readBoolean();
+                            else if (worldKey.equals("path")) this.worldPath = this.readString();
+                            else this.skipValue();
+                        });
+                        break;
+                    default:
+                        this.skipValue();
+                }
+            });
+            this.skipWhitespace();
+            if (this.i != this.bytes.length) throw new IllegalStateException("Trailing data");
+        }
+
+        private void scanObject(FieldHandler handler) {
+            this.expect('{');
+            if (this.peek() == '}') {
+                this.i++;
+                return;
+            }
+            while (true) {
+                String key = this.readString();
+                this.expect(':');
+                this.skipWhitespace();
+                handler.handle(key);
+                char next = this.next();
+                if (next == '}') return;
+                if (next != ',') throw new IllegalStateException("Expected , or }");
+            }
+        }
+
+        private String readString() {
+            this.expect('"');
+            StringBuilder builder = null;
+            int runStart = this.i;
+            while (true) {
+                byte b = this.bytes[this.i];
+                if (b == '"') {
+                    String run = new String(this.bytes, runStart, this.i - runStart, StandardCharsets.UTF_8);
+                    this.i++;
+                    return builder == null ? run : builder.append(run).toString();
+                }
+                if (b != '\\') {
+                    this.i++;
+                    continue;
+                }
+                if (builder == null) builder = new StringBuilder();
+                builder.append(new String(this.bytes, runStart, this.i - runStart, StandardCharsets.UTF_8));
+                this.i++;
+                char escaped = (char) this.bytes[this.i++];
+                switch (escaped) {
+                    case 'b':
+                        builder.append('\b');
+                        break;
+                    case 'f':
+                        builder.append('\f');
+                        break;
+                    case 'n':
+                        builder.append('\n');
+                        break;
+                    case 'r':
+                        builder.append('\r');
+                        break;
+                    case 't':
+                        builder.append('\t');
+                        break;
+                    case 'u':
+                        builder.append((char) Integer.parseInt(new String(this.bytes, this.i, 4, StandardCharsets.US_ASCII), 16));
+                        this.i += 4;
+                        break;
+                    case '"':
+                    case '\\':
+                    case '/':
+                        builder.append(escaped);
+                        break;
+                    default:
+                        throw new IllegalStateException("Invalid escape");
+                }
+                runStart = this.i;
+            }
+        }
+
+        private long readLong() {
+            int start = this.i;
+            while (this.i < this.bytes.length && (this.bytes[this.i] == '-' || (this.bytes[this.i] >= '0' && this.bytes[this.i] <= '9'))) {
+                this.i++;
+            }
+            return Long.parseLong(new String(this.bytes, start, this.i - start, StandardCharsets.US_ASCII));
+        }
+
+        private boolean readBoolean() {
+            if (this.matches("true")) return true;
+            if (this.matches("false")) return false;
+            throw new IllegalStateException("Expected boolean");
+        }
+
+        private void skipValue() {
+            byte b = this.bytes[this.i];
+            if (b == '"') {
+                this.readString();
+            } else if (b == '{') {
+                this.scanObject(key -> this.skipValue());
+            } else if (b == '[') {
+                this.i++;
+                if (this.peek() == ']') {
+                    this.i++;
+                    return;
+                }
+                do {
+                    this.skipWhitespace();
+                    this.skipValue();
+                } while (this.next() == ',');
+                if (this.bytes[this.i - 1] != ']') throw new IllegalStateException("Expected ]");
+            } else if (!this.matches("true") && !this.matches("false") && !this.matches("null")) {
+                // Number
+                int start = this.i;
+                while (this.i < this.bytes.length && "+-.eE0123456789".indexOf(this.bytes[this.i]) != -1) {
+                    this.i++;
+                }
+                if (start == this.i) throw new IllegalStateException("Unexpected value");
+            }
+        }
+
+        private boolean matches(String literal) {
+            if (this.i + literal.length() > this.bytes.length) return false;
+            for (int j = 0; j < literal.length(); j++) {
+                if (this.bytes[this.i + j] != literal.charAt(j)) return false;
+            }
+            this.i += literal.length();
+            return true;
+        }
+
+        private void expect(char c) {
+            if (this.next() != c) throw new IllegalStateException("Expected " + c);
+        }
+
+        /**
+         * @return the next non-whitespace character, consuming it
+         */
+        private char next() {
+            this.skipWhitespace();
+            return (char) this.bytes[this.i++];
+        }
+
+        /**
+         * @return the next non-whitespace character without consuming it
+         */
+        private char peek() {
+            this.skipWhitespace();
+            return (char) this.bytes[this.i];
+        }
+
+        private void skipWhitespace() {
+            while (this.i < this.bytes.length) {
+                byte b = this.bytes[this.i];
+                if (b != ' ' && b != '\t' && b != '\r' && b != '\n') return;
+                this.i++;
+            }
+        }
+
+        private interface FieldHandler {
+            void handle(String key);
+        }
+    }
+}
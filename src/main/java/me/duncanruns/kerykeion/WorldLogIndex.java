@@ -0,0 +1,288 @@
+package me.duncanruns.kerykeion;
+
+import java.io.IOException;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * An index of an instance's world log that is built as the log is read, so that past sessions can be looked up without
+ * replaying the log, see {@link KerykeionEngine#getWorldLogIndex(Path)}. Only times, offsets and sessions are kept in
+ * memory. Entries are read back from the log when they are asked for, and only the part of the log that holds them is
+ * read.
+ * <p>
+ * Entries are expected to be in time order, which is how they are written. Entries without a time are only found by
+ * their offset. The index can be used from any thread while the engine keeps adding to it.
+ */
+@SuppressWarnings("unused")
+public final class WorldLogIndex {
+    private final Path path;
+    private final Path gameDir;
+    private long[] times = new long[64]; // Entries without a time get the time of the entry before them
+    private long[] offsets = new long[64];
+    private int size = 0;
+    private long indexedTo = 0; // Offset just after the last indexed entry
+    private final List<Session> sessions = new ArrayList<>();
+    private final Map<Path, List<Integer>> worldSessions = new HashMap<>(); // world path -> indices in sessions
+    private int openSession = -1; // Index of the session that has been entered and not left yet
+
+    WorldLogIndex(Path path, Path gameDir) {
+        this.path = path;
+        this.gameDir = gameDir;
+    }
+
+    /**
+     * Adds an entry that was read from the log. Entries must be added in the order they are in the log.
+     */
+    synchronized void add(WorldLogEntry entry, long offset) {
+        if (this.size == this.times.length) {
+            this.times = Arrays.copyOf(this.times, this.size * 2);
+            this.offsets = Arrays.copyOf(this.offsets, this.size * 2);
+        }
+        this.times[this.size] = entry.getTime() != -1 || this.size == 0 ? entry.getTime() : this.times[this.size - 1];
+        this.offsets[this.size] = offset;
+        this.size++;
+        String type = entry.getType();
+        if (type == null) return;
+        switch (type) {
+            case "entering":
+                Path worldPath = this.resolveWorld(entry);
+                if (worldPath == null) return;
+                // A world that was never left (e.g. after a crash) stays without a leave time
+                this.openSession = this.sessions.size();
+                this.sessions.add(new Session(worldPath, entry.getTime(), offset, -1, -1));
+                this.worldSessions.computeIfAbsent(worldPath, p -> new ArrayList<>()).add(this.openSession);
+                break;
+            case "leave":
+                if (this.openSession == -1) return;
+                Session open = this.sessions.get(this.openSession);
+                if (!Objects.equals(open.worldPath, this.resolveWorld(entry))) return;
+                this.sessions.set(this.openSession, new Session(open.worldPath, open.enteringTime, open.enteringOffset, entry.getTime(), offset));
+                this.openSession = -1;
+                break;
+        }
+    }
+
+    /**
+     * Records that everything before the offset has been indexed.
+     */
+    synchronized void setIndexedTo(long offset) {
+        this.indexedTo = offset;
+    }
+
+    private Path resolveWorld(WorldLogEntry entry) {
+        if (this.gameDir == null) return null;
+        try {
+            return entry.resolveWorldPath(this.gameDir);
+        } catch (InvalidPathException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return the path of the world log
+     */
+    public Path getPath() {
+        return this.path;
+    }
+
+    /**
+     * @return the game directory of the instance, which relative world paths are resolved against
+     */
+    public Path getGameDir() {
+        return this.gameDir;
+    }
+
+    /**
+     * @return the number of entries that have been indexed
+     */
+    public synchronized int getEntryCount() {
+        return this.size;
+    }
+
+    /**
+     * @return every world that has been entered, in no particular order
+     */
+    public synchronized Set<Path> getWorlds() {
+        return new HashSet<>(this.worldSessions.keySet());
+    }
+
+    /**
+     * @return every session of the world in the order they were entered, which is empty if it was never entered. This
+     * can also tell which lines of a rejoined world's play log were written in earlier sessions.
+     */
+    public synchronized List<Session> getSessions(Path worldPath) {
+        List<Integer> indices = this.worldSessions.get(worldPath);
+        if (indices == null) return Collections.emptyList();
+        List<Session> sessions = new ArrayList<>(indices.size());
+        for (int index : indices) {
+            sessions.add(this.sessions.get(index));
+        }
+        return sessions;
+    }
+
+    /**
+     * @return every session of every world in the order they were entered
+     */
+    public synchronized List<Session> getSessions() {
+        return new ArrayList<>(this.sessions);
+    }
+
+    /**
+     * @return the last session that was entered at or before the given time, which may have been left since, or null
+     * if there is none
+     */
+    public synchronized Session getLastSessionBefore(long time) {
+        int low = 0;
+        int high = this.sessions.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (this.sessions.get(mid).enteringTime <= time) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low == 0 ? null : this.sessions.get(low - 1);
+    }
+
+    /**
+     * @return the offset of the first entry at or after the given time, or the end of the indexed entries if there is
+     * none
+     */
+    public synchronized long getOffset(long time) {
+        int index = this.firstIndexAfter(time - 1);
+        return index < this.size ? this.offsets[index] : this.indexedTo;
+    }
+
+    /**
+     * Reads the entries between the given times (inclusive) back from the log.
+     *
+     * @throws IOException if the log could not be read
+     */
+    public List<WorldLogEntry> readEntries(long fromTime, long toTime) throws IOException {
+        long start;
+        long end;
+        synchronized (this) {
+            start = this.getOffset(fromTime);
+            int endIndex = this.firstIndexAfter(toTime);
+            end = endIndex < this.size ? this.offsets[endIndex] : this.indexedTo;
+        }
+        List<WorldLogEntry> entries = this.read(start, end);
+        entries.removeIf(entry -> entry.getTime() < fromTime || entry.getTime() > toTime);
+        return entries;
+    }
+
+    /**
+     * Reads a single entry back from the log, such as the entering entry of a session.
+     *
+     * @param offset the offset of the entry, e.g. from {@link Session#getEnteringOffset()}
+     * @return the entry, or null if no indexed entry starts at the offset
+     * @throws IOException if the log could not be read
+     */
+    public WorldLogEntry readEntry(long offset) throws IOException {
+        long end;
+        synchronized (this) {
+            int index = Arrays.binarySearch(this.offsets, 0, this.size, offset);
+            if (index < 0) return null;
+            end = index + 1 < this.size ? this.offsets[index + 1] : this.indexedTo;
+        }
+        List<WorldLogEntry> entries = this.read(offset, end);
+        return entries.isEmpty() ? null : entries.get(0);
+    }
+
+    /**
+     * @return the index of the first entry with a time after the given time, or the size if there is none
+     */
+    private int firstIndexAfter(long time) {
+        int low = 0;
+        int high = this.size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (this.times[mid] <= time) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private List<WorldLogEntry> read(long start, long end) throws IOException {
+        List<WorldLogEntry> entries = new ArrayList<>();
+        if (start >= end) return entries;
+        WorldLogReader reader = new WorldLogReader(this.path);
+        try {
+            reader.skipTo(start);
+            reader.setEnd(end);
+            reader.read(entryInfo -> entries.add(entryInfo.entry));
+        } finally {
+            reader.close();
+        }
+        return entries;
+    }
+
+    /**
+     * The time from a world being entered until it was left.
+     */
+    public static final class Session {
+        private final Path worldPath;
+        private final long enteringTime;
+        private final long enteringOffset;
+        private final long leaveTime;
+        private final long leaveOffset;
+
+        private Session(Path worldPath, long enteringTime, long enteringOffset, long leaveTime, long leaveOffset) {
+            this.worldPath = worldPath;
+            this.enteringTime = enteringTime;
+            this.enteringOffset = enteringOffset;
+            this.leaveTime = leaveTime;
+            this.leaveOffset = leaveOffset;
+        }
+
+        public Path getWorldPath() {
+            return this.worldPath;
+        }
+
+        /**
+         * @return the time of the entering entry, or -1 if it has none
+         */
+        public long getEnteringTime() {
+            return this.enteringTime;
+        }
+
+        /**
+         * @return the offset of the entering entry in the world log
+         */
+        public long getEnteringOffset() {
+            return this.enteringOffset;
+        }
+
+        /**
+         * @return the time of the leave entry, or -1 if the world is still open or was never left
+         */
+        public long getLeaveTime() {
+            return this.leaveTime;
+        }
+
+        /**
+         * @return the offset of the leave entry in the world log, or -1 if there is none
+         */
+        public long getLeaveOffset() {
+            return this.leaveOffset;
+        }
+
+        @Override
+        public String toString() {
+            return "Session{" + this.worldPath + ", " + this.enteringTime + " - " + this.leaveTime + "}";
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package me.duncanruns.kerykeion;
+
+import com.google.gson.JsonSyntaxException;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+class WorldLogReader {
+    private final LogReader logReader;
+    private final LongAdder parseFailures;
+
+    public WorldLogReader(Path path) {
+        this(path, Long.MAX_VALUE, new LongAdder());
+    }
+
+    /**
+     * @param memoryMapThreshold see {@link LogReader#LogReader(Path, long)}
+     * @param parseFailures      counts entries that could not be parsed
+     */
+    public WorldLogReader(Path path, long memoryMapThreshold, LongAdder parseFailures) {
+        this.logReader = new LogReader(path, memoryMapThreshold);
+        this.parseFailures = parseFailures;
+    }
+
+    /**
+     * @return true if the file has changed size since the last read
+     */
+    public boolean read(Consumer<EntryInfo> consumer) throws IOException {
+        return this.logReader.read(entryInfo -> {
+            try {
+                WorldLogEntry entry = WorldLogEntry.parse(getLineBytes(entryInfo.entry), entryInfo.offset);
+                consumer.accept(new EntryInfo(entry, entryInfo.offset, entryInfo.isNew));
+            } catch (JsonSyntaxException e) {
+                this.parseFailures.increment();
+                Kerykeion.errorLogger.accept("Failed to parse world log entry", e);
+            }
+        });
+    }
+
+    /**
+     * @return the bytes of the line without the line ending
+     */
+    private static byte[] getLineBytes(ByteBuffer line) {
+        int length = line.remaining();
+        while (length > 0 && (line.get(line.position() + length - 1) == '\n' || line.get(line.position() + length - 1) == '\r')) {
+            length--;
+        }
+        byte[] bytes = new byte[length];
+        line.duplicate().get(bytes);
+        return bytes;
+    }
+
+    public boolean isNextReadNew() {
+        return this.logReader.isNextReadNew();
+    }
+
+    public void skipTo(long offset) {
+        this.logReader.skipTo(offset);
+    }
+
+    public void setEnd(long end) {
+        this.logReader.setEnd(end);
+    }
+
+    public long getPosition() {
+        return this.logReader.getPosition();
+    }
+
+    public Path getPath() {
+        return this.logReader.getPath();
+    }
+
+    public void close() {
+        this.logReader.close();
+    }
+
+    static class EntryInfo {
+        final WorldLogEntry entry;
+        final long offset;
+        final boolean isNew;
+
+        public EntryInfo(WorldLogEntry entry, long offset, boolean isNew) {
+            this.entry = entry;
+            this.offset = offset;
+            this.isNew = isNew;
+        }
+    }
+}
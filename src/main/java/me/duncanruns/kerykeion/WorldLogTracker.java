@@ -1,49 +1,182 @@
 package me.duncanruns.kerykeion;
 
-import com.google.gson.JsonObject;
-
 import java.io.IOException;
-import java.util.Collection;
-import java.util.HashMap;
+import java.nio.file.Path;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.function.Consumer;
 
 class WorldLogTracker {
-    private final Map<HermesInstance, JsonLogReader> worldLogs = new HashMap<>();
-
-    public void tick(Collection<HermesInstance> instances, Consumer<EntryInfo> consumer) {
-        this.worldLogs.keySet().removeIf(i -> {
-            if (instances.contains(i)) return false;
-            this.worldLogs.get(i).close();
-            return true;
-        });
-
-        for (HermesInstance instance : instances) {
-            JsonLogReader worldLog = this.worldLogs.computeIfAbsent(
-                    instance,
-                    i -> Optional.ofNullable(instance.getWorldLogPath()).map(JsonLogReader::new).orElse(null)
-            );
-            if (worldLog == null) continue;
-            try {
-                worldLog.read(e -> consumer.accept(new EntryInfo(e.entry, instance, e.isNew)));
-            } catch (IOException e) {
-                worldLog.close();
-                this.worldLogs.remove(instance);
-                Kerykeion.errorLogger.accept("Failed to read world log", e);
+    private final Map<HermesInstance, WorldLog> worldLogs = new ConcurrentHashMap<>();
+    private final FileWatcher fileWatcher;
+    private final OffsetStore offsetStore;
+    private final KerykeionMetrics metrics;
+    private long memoryMapThreshold = Long.MAX_VALUE;
+    private boolean indexEnabled = false;
+
+    public WorldLogTracker(FileWatcher fileWatcher, OffsetStore offsetStore, KerykeionMetrics metrics) {
+        this.fileWatcher = fileWatcher;
+        this.offsetStore = offsetStore;
+        this.metrics = metrics;
+    }
+
+    public void setMemoryMapThreshold(long memoryMapThreshold) {
+        this.memoryMapThreshold = memoryMapThreshold;
+    }
+
+    public void setIndexEnabled(boolean indexEnabled) {
+        this.indexEnabled = indexEnabled;
+    }
+
+    /**
+     * Reads new entries from the world log of the instance. Different instances may be ticked concurrently.
+     */
+    public void tick(HermesInstance instance, Consumer<EntryBatch> consumer) {
+        WorldLog worldLog = this.worldLogs.computeIfAbsent(
+                instance,
+                i -> Optional.ofNullable(instance.getWorldLogPath()).map(path -> this.openWorldLog(instance, path)).orElse(null)
+        );
+        if (worldLog == null || !this.fileWatcher.hasChanged(worldLog.reader.getPath())) return;
+        boolean isNew = worldLog.reader.isNextReadNew();
+        Batcher<WorldLogEntry> batcher = new Batcher<>((entries, offset) -> consumer.accept(new EntryBatch(entries, instance, isNew, offset)));
+        long startPosition = worldLog.reader.getPosition();
+        long[] lines = {0};
+        try {
+            boolean changed = worldLog.reader.read(e -> {
+                worldLog.trackEntering(e);
+                if (worldLog.index != null) worldLog.index.add(e.entry, e.offset);
+                batcher.add(e.entry, e.offset);
+                lines[0]++;
+            });
+            batcher.flush();
+            if (worldLog.index != null) worldLog.index.setIndexedTo(worldLog.reader.getPosition());
+            this.metrics.recordWorldLogRead(worldLog.stats, worldLog.reader.getPath(), worldLog.reader.getPosition() - startPosition, lines[0]);
+            if (changed) this.fileWatcher.reportChange(worldLog.reader.getPath());
+            this.offsetStore.update(worldLog.reader.getPath(), worldLog.getCheckpointOffset());
+        } catch (IOException e) {
+            batcher.flush();
+            this.closeWorldLog(worldLog);
+            this.worldLogs.remove(instance);
+            Kerykeion.errorLogger.accept("Failed to read world log", e);
+        }
+    }
+
+    /**
+     * @return the entering entry of the world that is currently open in the instance, or null if no world is open or
+     * the world log hasn't been read yet. Should only be called while ticking the instance.
+     */
+    public WorldLogEntry getCurrentWorldEntry(HermesInstance instance) {
+        WorldLog worldLog = this.worldLogs.get(instance);
+        return worldLog == null ? null : worldLog.enteringEntry;
+    }
+
+    /**
+     * @return the index of the world log of the instance with the given game directory, or null if indexing is
+     * disabled or the world log hasn't been opened. Can be called from any thread.
+     */
+    public WorldLogIndex getIndex(Path gameDir) {
+        for (WorldLog worldLog : this.worldLogs.values()) {
+            if (worldLog.index != null && gameDir.equals(worldLog.index.getGameDir())) return worldLog.index;
+        }
+        return null;
+    }
+
+    /**
+     * Stops tracking a closed instance. Should not be called while the instance is being ticked.
+     */
+    public void remove(HermesInstance instance) {
+        this.closeWorldLog(this.worldLogs.remove(instance));
+    }
+
+    private WorldLog openWorldLog(HermesInstance instance, Path path) {
+        this.fileWatcher.watch(path);
+        WorldLogReader reader = new WorldLogReader(path, this.memoryMapThreshold, this.metrics.worldLogParseFailures);
+        long resumeOffset = this.offsetStore.getResumeOffset(path);
+        reader.skipTo(resumeOffset);
+        WorldLogIndex index = null;
+        if (this.indexEnabled) {
+            index = new WorldLogIndex(path, instance.getGameDir());
+            this.indexUpTo(index, path, resumeOffset);
+        }
+        return new WorldLog(reader, this.metrics.openFile(path), index);
+    }
+
+    /**
+     * Indexes the part of the log that is skipped when resuming, without delivering it.
+     */
+    private void indexUpTo(WorldLogIndex index, Path path, long offset) {
+        if (offset == 0) return;
+        // Failures here were already counted when the entries were first read
+        WorldLogReader reader = new WorldLogReader(path, this.memoryMapThreshold, new LongAdder());
+        try {
+            reader.setEnd(offset);
+            reader.read(e -> index.add(e.entry, e.offset));
+            index.setIndexedTo(reader.getPosition());
+        } catch (IOException e) {
+            Kerykeion.errorLogger.accept("Failed to index world log", e);
+        } finally {
+            reader.close();
+        }
+    }
+
+    private void closeWorldLog(WorldLog worldLog) {
+        if (worldLog == null) return;
+        worldLog.reader.close();
+        this.fileWatcher.unwatch(worldLog.reader.getPath());
+        this.metrics.closeFile(worldLog.reader.getPath());
+    }
+
+    private static class WorldLog {
+        private final WorldLogReader reader;
+        private final KerykeionMetrics.FileReadStats stats;
+        private final WorldLogIndex index; // Null unless indexing is enabled
+        private long enteringOffset = -1; // Offset of the entering entry of the world that is currently open
+        private WorldLogEntry enteringEntry = null;
+
+        private WorldLog(WorldLogReader reader, KerykeionMetrics.FileReadStats stats, WorldLogIndex index) {
+            this.reader = reader;
+            this.stats = stats;
+            this.index = index;
+        }
+
+        private void trackEntering(WorldLogReader.EntryInfo entryInfo) {
+            String type = entryInfo.entry.getType();
+            if (type == null) return;
+            switch (type) {
+                case "entering":
+                    this.enteringOffset = entryInfo.offset;
+                    this.enteringEntry = entryInfo.entry;
+                    break;
+                case "leave":
+                    this.enteringOffset = -1;
+                    this.enteringEntry = null;
+                    break;
             }
         }
+
+        /**
+         * Resuming from the entering entry of the currently open world lets anything that needs to know the current
+         * world (such as the live play log tracker) find it again after a restart.
+         */
+        private long getCheckpointOffset() {
+            return this.enteringOffset == -1 ? this.reader.getPosition() : this.enteringOffset;
+        }
     }
 
-    static class EntryInfo {
-        final JsonObject entry;
+    static class EntryBatch {
+        final List<WorldLogEntry> entries;
         final HermesInstance instance;
         final boolean isNew;
+        final long offset;
 
-        public EntryInfo(JsonObject entry, HermesInstance instance, boolean isNew) {
-            this.entry = entry;
+        public EntryBatch(List<WorldLogEntry> entries, HermesInstance instance, boolean isNew, long offset) {
+            this.entries = entries;
             this.instance = instance;
             this.isNew = isNew;
+            this.offset = offset;
         }
     }
 }
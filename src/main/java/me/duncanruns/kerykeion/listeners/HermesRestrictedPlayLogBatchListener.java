@@ -0,0 +1,41 @@
+package me.duncanruns.kerykeion.listeners;
+
+import com.google.gson.JsonObject;
+import me.duncanruns.kerykeion.KerykeionUtil;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+/**
+ * Receives all lines read from a live play log in one go, rather than one call per line. With an executor, each batch
+ * is a single task.
+ * <p>
+ * The same restrictions as {@link HermesRestrictedPlayLogListener} apply.
+ */
+public interface HermesRestrictedPlayLogBatchListener extends KerykeionListener {
+    static HermesRestrictedPlayLogBatchListener wrap(HermesRestrictedPlayLogBatchListener listener, Executor executor) {
+        if (executor == null) return listener;
+        return (instanceInfo, worldPath, lines) -> KerykeionUtil.executeIgnore(executor, () -> listener.onLivePlayLogEntries(instanceInfo, worldPath, lines));
+    }
+
+    /**
+     * Adapts a per-line play log listener to a batch one.
+     */
+    static HermesRestrictedPlayLogBatchListener adapt(HermesRestrictedPlayLogListener listener) {
+        return (instanceInfo, worldPath, lines) -> {
+            for (byte[] line : lines) {
+                listener.onLivePlayLogEntry(instanceInfo, worldPath, line);
+            }
+        };
+    }
+
+    /**
+     * @param instanceInfo The instance info file contents
+     * @param worldPath    The path of the world the play log belongs to
+     * @param lines        The lines in the order they were written, including line endings. Never empty and not
+     *                     modifiable, and the arrays are shared between listeners so they should not be modified
+     *                     either.
+     */
+    void onLivePlayLogEntries(JsonObject instanceInfo, Path worldPath, List<byte[]> lines);
+}
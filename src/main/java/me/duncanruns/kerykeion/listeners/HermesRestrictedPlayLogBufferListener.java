@@ -0,0 +1,40 @@
+package me.duncanruns.kerykeion.listeners;
+
+import com.google.gson.JsonObject;
+import me.duncanruns.kerykeion.KerykeionUtil;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.concurrent.Executor;
+
+/**
+ * Receives each line read from a live play log as a read-only view of Kerykeion's read buffer, without copying it. Long
+ * play log replays then allocate next to nothing. The buffer is only valid until the call returns, so anything that is
+ * needed later has to be copied out of it.
+ * <p>
+ * With an executor, each line has to outlive the call, so it is copied before being handed over. Lines replayed in the
+ * background (see {@link me.duncanruns.kerykeion.KerykeionEngine#setBackgroundReplayThreshold(long)}) are copied once
+ * to get them off the reading thread, in chunks of many lines unless a batch listener needs them copied one by one.
+ * <p>
+ * The same restrictions as {@link HermesRestrictedPlayLogListener} apply.
+ */
+public interface HermesRestrictedPlayLogBufferListener extends KerykeionListener {
+    static HermesRestrictedPlayLogBufferListener wrap(HermesRestrictedPlayLogBufferListener listener, Executor executor) {
+        if (executor == null) return listener;
+        return (instanceInfo, worldPath, offset, line) -> {
+            ByteBuffer copy = ByteBuffer.allocate(line.remaining());
+            copy.put(line.duplicate()).flip();
+            ByteBuffer readOnly = copy.asReadOnlyBuffer();
+            KerykeionUtil.executeIgnore(executor, () -> listener.onLivePlayLogLine(instanceInfo, worldPath, offset, readOnly));
+        };
+    }
+
+    /**
+     * @param instanceInfo The instance info file contents
+     * @param worldPath    The path of the world the play log belongs to
+     * @param offset       The offset of the line in the play log
+     * @param line         The line including the line ending, between the buffer's position and limit. Only valid until
+     *                     this call returns.
+     */
+    void onLivePlayLogLine(JsonObject instanceInfo, Path worldPath, long offset, ByteBuffer line);
+}
@@ -0,0 +1,31 @@
+package me.duncanruns.kerykeion.listeners;
+
+import com.google.gson.JsonObject;
+import me.duncanruns.kerykeion.KerykeionUtil;
+
+import java.nio.file.Path;
+import java.util.concurrent.Executor;
+
+/**
+ * Is told when every line that was already in a live play log when it was opened has been delivered to the play log
+ * listeners, so anything after this was written while the world was being tracked. Usually implemented by a play log
+ * listener as well.
+ * <p>
+ * With a background replay threshold (see
+ * {@link me.duncanruns.kerykeion.KerykeionEngine#setBackgroundReplayThreshold(long)}), lines written after the play
+ * log was opened can arrive before this, while the older lines are still being replayed.
+ * <p>
+ * The same restrictions as {@link HermesRestrictedPlayLogListener} apply.
+ */
+public interface HermesRestrictedPlayLogCaughtUpListener extends KerykeionListener {
+    static HermesRestrictedPlayLogCaughtUpListener wrap(HermesRestrictedPlayLogCaughtUpListener listener, Executor executor) {
+        if (executor == null) return listener;
+        return (instanceInfo, worldPath) -> KerykeionUtil.executeIgnore(executor, () -> listener.onLivePlayLogCaughtUp(instanceInfo, worldPath));
+    }
+
+    /**
+     * @param instanceInfo The instance info file contents
+     * @param worldPath    The path of the world the play log belongs to
+     */
+    void onLivePlayLogCaughtUp(JsonObject instanceInfo, Path worldPath);
+}
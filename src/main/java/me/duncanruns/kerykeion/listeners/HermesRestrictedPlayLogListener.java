@@ -1,23 +1,23 @@
 package me.duncanruns.kerykeion.listeners;
 
 import com.google.gson.JsonObject;
-import me.duncanruns.kerykeion.KerykeionUtil;
 
 import java.nio.file.Path;
-import java.util.concurrent.Executor;
 
 /**
  * This will enable live encrypted entries from the play log. speedrun.com/mc and /mcce do not allow most tools to use
  * this data, encrypted or not. Kerykeion does not provide unencryption utilities.
  * <p>
- * If a player logs back into a previous world, the entire log will be re-read. Comparing times from the world log with
- * the time in the play log entry is recommended to determine if an entry is new.
+ * If a player logs back into a previous world, the entire log will be re-read, unless an offset store is set with
+ * {@link me.duncanruns.kerykeion.KerykeionEngine#setOffsetStorePath(java.nio.file.Path)}, in which case reading resumes
+ * where it left off. Without one, comparing times from the world log with the time in the play log entry is recommended
+ * to determine if an entry is new.
  */
 public interface HermesRestrictedPlayLogListener extends KerykeionListener {
-    static HermesRestrictedPlayLogListener wrap(HermesRestrictedPlayLogListener listener, Executor executor) {
-        if (executor == null) return listener;
-        return (instanceInfo, worldPath, lineBytes) -> KerykeionUtil.executeIgnore(executor, () -> listener.onLivePlayLogEntry(instanceInfo, worldPath, lineBytes));
-    }
-
+    /**
+     * @param instanceInfo The instance info file contents
+     * @param worldPath    The path of the world the play log belongs to
+     * @param lineBytes    The line including its line ending, shared between listeners so it should not be modified
+     */
     void onLivePlayLogEntry(JsonObject instanceInfo, Path worldPath, byte[] lineBytes);
 }
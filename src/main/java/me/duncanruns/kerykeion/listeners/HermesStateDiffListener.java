@@ -0,0 +1,56 @@
+package me.duncanruns.kerykeion.listeners;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import me.duncanruns.kerykeion.KerykeionUtil;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+/**
+ * Receives only the top-level keys of an instance's state that have changed, optionally limited to the keys the
+ * listener is subscribed to. Nothing is delivered when none of the subscribed keys changed.
+ */
+public interface HermesStateDiffListener extends KerykeionListener {
+    static HermesStateDiffListener wrap(HermesStateDiffListener listener, Executor executor) {
+        if (executor == null) return listener;
+        return (instanceInfo, state, changes) -> KerykeionUtil.executeIgnore(executor, () -> listener.onInstanceStateDiff(instanceInfo, state, changes));
+    }
+
+    /**
+     * Limits the changes given to the listener to its subscribed keys.
+     */
+    static HermesStateDiffListener filter(HermesStateDiffListener listener) {
+        Collection<String> keys = listener.getSubscribedKeys();
+        if (keys == null) return listener;
+        return (instanceInfo, state, changes) -> {
+            JsonObject filtered = new JsonObject();
+            for (Map.Entry<String, JsonElement> change : changes.entrySet()) {
+                if (keys.contains(change.getKey())) {
+                    filtered.add(change.getKey(), change.getValue());
+                }
+            }
+            if (filtered.size() > 0) {
+                listener.onInstanceStateDiff(instanceInfo, state, filtered);
+            }
+        };
+    }
+
+    /**
+     * Called once when the listener is added.
+     *
+     * @return The top-level state keys this listener wants changes for, or null for all keys
+     */
+    default Collection<String> getSubscribedKeys() {
+        return null;
+    }
+
+    /**
+     * @param instanceInfo The instance info file contents
+     * @param state        The full state file contents
+     * @param changes      The changed keys with their new values, removed keys have a json null value. Never empty, and
+     *                     may be shared between listeners so it should not be modified.
+     */
+    void onInstanceStateDiff(JsonObject instanceInfo, JsonObject state, JsonObject changes);
+}
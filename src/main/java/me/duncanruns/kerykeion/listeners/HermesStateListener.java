@@ -5,10 +5,14 @@ import me.duncanruns.kerykeion.KerykeionUtil;
 
 import java.util.concurrent.Executor;
 
+/**
+ * Receives the full state of an instance whenever it changes. Rewrites of an identical state are not delivered, see
+ * {@link HermesStateDiffListener} to only receive what changed.
+ */
 public interface HermesStateListener extends KerykeionListener {
     static HermesStateListener wrap(HermesStateListener listener, Executor executor) {
         if (executor == null) return listener;
-        return (instanceInfo, state) -> KerykeionUtil.executeIgnore(executor, () -> listener.onInstanceStateChange(instanceInfo, state));
+        return (instanceInfo, state) -> KerykeionUtil.executeIgnore(executor, KerykeionUtil.coalesceKey(listener, instanceInfo), () -> listener.onInstanceStateChange(instanceInfo, state));
     }
 
     /**
@@ -0,0 +1,25 @@
+package me.duncanruns.kerykeion.listeners;
+
+import com.google.gson.JsonObject;
+import me.duncanruns.kerykeion.WorldLogEntry;
+
+/**
+ * A world log listener that receives {@link WorldLogEntry} objects instead of json trees. Listeners that only look at
+ * the type, time or world of entries should prefer this over {@link HermesWorldLogListener}, since entries are only
+ * fully parsed when {@link WorldLogEntry#getJson()} is called.
+ */
+public interface HermesTypedWorldLogListener extends KerykeionListener {
+    /**
+     * Adapts a json world log listener to a typed one.
+     */
+    static HermesTypedWorldLogListener adapt(HermesWorldLogListener listener) {
+        return (instanceInfo, entry, isNew) -> listener.onWorldLogEntry(instanceInfo, entry.getJson(), isNew);
+    }
+
+    /**
+     * @param instanceInfo The instance info file contents
+     * @param entry        The world log entry
+     * @param isNew        Whether this is a new entry or was already in the log when Kerykeion started
+     */
+    void onWorldLogEntry(JsonObject instanceInfo, WorldLogEntry entry, boolean isNew);
+}
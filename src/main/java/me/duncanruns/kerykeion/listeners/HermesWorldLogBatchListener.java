@@ -0,0 +1,37 @@
+package me.duncanruns.kerykeion.listeners;
+
+import com.google.gson.JsonObject;
+import me.duncanruns.kerykeion.KerykeionUtil;
+import me.duncanruns.kerykeion.WorldLogEntry;
+
+import java.util.List;
+import java.util.concurrent.Executor;
+
+/**
+ * Receives all world log entries read from an instance's world log in one go, rather than one call per entry. With an
+ * executor, each batch is a single task.
+ */
+public interface HermesWorldLogBatchListener extends KerykeionListener {
+    static HermesWorldLogBatchListener wrap(HermesWorldLogBatchListener listener, Executor executor) {
+        if (executor == null) return listener;
+        return (instanceInfo, entries, isNew) -> KerykeionUtil.executeIgnore(executor, () -> listener.onWorldLogEntries(instanceInfo, entries, isNew));
+    }
+
+    /**
+     * Adapts a per-entry world log listener to a batch one.
+     */
+    static HermesWorldLogBatchListener adapt(HermesTypedWorldLogListener listener) {
+        return (instanceInfo, entries, isNew) -> {
+            for (WorldLogEntry entry : entries) {
+                listener.onWorldLogEntry(instanceInfo, entry, isNew);
+            }
+        };
+    }
+
+    /**
+     * @param instanceInfo The instance info file contents
+     * @param entries      The world log entries in the order they were written, never empty and not modifiable
+     * @param isNew        Whether these are new entries or were already in the log when Kerykeion started
+     */
+    void onWorldLogEntries(JsonObject instanceInfo, List<WorldLogEntry> entries, boolean isNew);
+}
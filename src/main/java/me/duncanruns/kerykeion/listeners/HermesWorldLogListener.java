@@ -1,16 +1,12 @@
 package me.duncanruns.kerykeion.listeners;
 
 import com.google.gson.JsonObject;
-import me.duncanruns.kerykeion.KerykeionUtil;
-
-import java.util.concurrent.Executor;
 
+/**
+ * Receives world log entries as json objects. Consider {@link HermesTypedWorldLogListener} instead, which avoids
+ * building a json tree for every entry.
+ */
 public interface HermesWorldLogListener extends KerykeionListener {
-    static HermesWorldLogListener wrap(HermesWorldLogListener listener, Executor executor) {
-        if (executor == null) return listener;
-        return (instanceInfo, entry, isNew) -> KerykeionUtil.executeIgnore(executor, () -> listener.onWorldLogEntry(instanceInfo, entry, isNew));
-    }
-
     /**
      * @param instanceInfo The instance info file contents
      * @param entry        The world log entry